@@ -0,0 +1,40 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import io.github.lihewei7.easysftp.config.SftpProperties;
+
+/**
+ * @explain: Named kex, cipher, MAC and compression settings, selected with {@code -p profile=aes128-ctr,zlib}.
+ * @author: lihewei
+ */
+public enum CryptoProfile {
+    /**
+     * Starter defaults.
+     */
+    DEFAULT(null, null, null, null),
+    ECDH("ecdh-sha2-nistp256", null, null, null),
+    AES128_CTR(null, "aes128-ctr", "hmac-sha2-256", null),
+    AES256_CTR(null, "aes256-ctr", "hmac-sha2-256", null),
+    AES128_CBC(null, "aes128-cbc", "hmac-sha1", null),
+    ZLIB(null, null, null, "zlib@openssh.com,zlib,none");
+
+    private final String kex;
+    private final String ciphers;
+    private final String macs;
+    private final String compression;
+
+    CryptoProfile(String kex, String ciphers, String macs, String compression) {
+        this.kex = kex;
+        this.ciphers = ciphers;
+        this.macs = macs;
+        this.compression = compression;
+    }
+
+    void apply(SftpProperties sftpProperties) {
+        if (kex != null) {
+            sftpProperties.setKex(kex);
+        }
+        sftpProperties.setCiphers(ciphers);
+        sftpProperties.setMacs(macs);
+        sftpProperties.setCompression(compression);
+    }
+}
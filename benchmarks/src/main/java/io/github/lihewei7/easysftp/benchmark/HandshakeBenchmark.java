@@ -0,0 +1,53 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import io.github.lihewei7.easysftp.config.PoolProperties;
+import io.github.lihewei7.easysftp.core.SftpClient;
+import io.github.lihewei7.easysftp.core.SftpPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @explain: Cost of opening a new connection, SSH handshake plus sftp channel, per crypto profile.
+ * Run with {@code -p profile=default,ecdh,aes128-ctr} to compare them.
+ * @author: lihewei
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class NoIdlePool {
+        public SftpPool sftpPool;
+
+        @Setup(Level.Trial)
+        public void setUp(SftpState state) {
+            // Nothing is kept idle, so every borrow opens a connection and every return closes it.
+            PoolProperties poolProperties = new PoolProperties();
+            poolProperties.setMinIdle(0);
+            poolProperties.setMaxIdle(0);
+            poolProperties.setTestOnBorrow(false);
+            sftpPool = new SftpPool(state.sftpProperties(), poolProperties);
+        }
+    }
+
+    @Benchmark
+    public SftpClient connect(NoIdlePool pool) {
+        SftpClient sftpClient = pool.sftpPool.borrowObject(null);
+        pool.sftpPool.returnObject(null, sftpClient);
+        return sftpClient;
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import com.jcraft.jsch.ChannelSftp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @explain: Listing a large remote directory, collected into an array, streamed, and stopped early.
+ * @author: lihewei
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListBenchmark {
+    private static final String DIR = "/list";
+
+    @State(Scope.Benchmark)
+    public static class Directory {
+        @Param({"1000", "10000"})
+        public int entries;
+
+        @Setup(Level.Trial)
+        public void setUp(SftpState state) throws IOException {
+            Path dir = Files.createDirectories(state.server.getRoot().resolve("list"));
+            for (int i = 0; i < entries; i++) {
+                Files.createFile(dir.resolve("entry-" + i + ".txt"));
+            }
+        }
+    }
+
+    @Benchmark
+    public ChannelSftp.LsEntry[] listArray(SftpState state, Directory directory) throws Exception {
+        state.selectHost();
+        return state.sftpTemplate.list(DIR);
+    }
+
+    @Benchmark
+    public int listStream(SftpState state, Directory directory, Blackhole blackhole) throws Exception {
+        state.selectHost();
+        return state.sftpTemplate.list(DIR, blackhole::consume);
+    }
+
+    /**
+     * Stop after the first 100 matches, the rest of the directory is never read.
+     */
+    @Benchmark
+    public int listFirst100(SftpState state, Directory directory, Blackhole blackhole) throws Exception {
+        state.selectHost();
+        return state.sftpTemplate.list(DIR, entry -> entry.getFilename().endsWith(".txt"), 100, blackhole::consume);
+    }
+}
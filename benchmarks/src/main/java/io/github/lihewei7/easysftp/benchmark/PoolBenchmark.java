@@ -0,0 +1,56 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import io.github.lihewei7.easysftp.core.SftpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @explain: Cost of getting a connection in and out of the pool, and of the smallest template round trip.
+ * @author: lihewei
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoolBenchmark {
+
+    /**
+     * Pool borrow and return, including validation on borrow.
+     */
+    @Benchmark
+    public SftpClient borrowReturn(SftpState state) {
+        SftpClient sftpClient = state.sftpPool.borrowObject(state.poolKey());
+        state.sftpPool.returnObject(state.poolKey(), sftpClient);
+        return sftpClient;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SftpClient borrowReturnContended(SftpState state) {
+        return borrowReturn(state);
+    }
+
+    /**
+     * One request to the server through the template: borrow, pwd, reset, return.
+     */
+    @Benchmark
+    public String executeRoundTrip(SftpState state) throws Exception {
+        state.selectHost();
+        return state.sftpTemplate.execute(channelSftp -> channelSftp.pwd());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String executeRoundTripContended(SftpState state) throws Exception {
+        return executeRoundTrip(state);
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.signature.BuiltinSignatures;
+import org.apache.sshd.common.signature.Signature;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @explain: In-process SFTP server on loopback, serving a temporary directory.
+ * Nothing leaves the machine, so the benchmarks run offline and measure the client rather than the network.
+ * @author: lihewei
+ */
+public class SftpServerFixture implements AutoCloseable {
+    public static final String USERNAME = "bench";
+    public static final String PASSWORD = "bench";
+
+    private final Path root;
+    private final Path hostKey;
+    private final SshServer sshd;
+
+    public SftpServerFixture() throws IOException {
+        this.root = Files.createTempDirectory("easysftp-bench-root");
+        this.hostKey = Files.createTempFile("easysftp-bench-hostkey", ".ser");
+        Files.delete(hostKey);
+        SimpleGeneratorHostKeyProvider keyProvider = new SimpleGeneratorHostKeyProvider(hostKey);
+        keyProvider.setAlgorithm("RSA");
+
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setHost("127.0.0.1");
+        sshd.setPort(0);
+        sshd.setKeyPairProvider(keyProvider);
+        // JSch 0.1.55 only signs with ssh-rsa, which MINA no longer offers by default.
+        List<NamedFactory<Signature>> signatures = new ArrayList<>(sshd.getSignatureFactories());
+        signatures.add(BuiltinSignatures.rsa);
+        sshd.setSignatureFactories(signatures);
+        sshd.setPasswordAuthenticator((username, password, session) -> USERNAME.equals(username) && PASSWORD.equals(password));
+        sshd.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        sshd.setFileSystemFactory(new VirtualFileSystemFactory(root));
+        sshd.start();
+    }
+
+    public int getPort() {
+        return sshd.getPort();
+    }
+
+    /**
+     * Local directory behind the sftp root, benchmarks prepare their data here directly.
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sshd.stop(true);
+        Files.deleteIfExists(hostKey);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import io.github.lihewei7.easysftp.config.PoolProperties;
+import io.github.lihewei7.easysftp.config.SftpProperties;
+import io.github.lihewei7.easysftp.config.TransferProperties;
+import io.github.lihewei7.easysftp.core.HostsManage;
+import io.github.lihewei7.easysftp.core.SftpPool;
+import io.github.lihewei7.easysftp.core.SftpTemplate;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.LinkedHashMap;
+
+/**
+ * @explain: Embedded server plus a pool and template pointing at it, shared by all benchmark threads.
+ * In keyed mode two host keys point at the same server and every call targets {@link #HOST}.
+ * @author: lihewei
+ */
+@State(Scope.Benchmark)
+public class SftpState {
+    public static final String HOST = "bench-0";
+
+    /**
+     * "single" for {@code sftp.host}, "keyed" for {@code sftp.hosts}.
+     */
+    @Param({"single", "keyed"})
+    public String pool;
+
+    @Param({"8"})
+    public int maxActive;
+
+    @Param({"1"})
+    public int channelsPerSession;
+
+    @Param({"0"})
+    public long validationWindow;
+
+    /**
+     * Crypto profile of the connections, see {@link CryptoProfile}.
+     */
+    @Param({"default"})
+    public String profile;
+
+    public SftpServerFixture server;
+    public SftpPool sftpPool;
+    public SftpTemplate sftpTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new SftpServerFixture();
+        PoolProperties poolProperties = new PoolProperties();
+        poolProperties.setMaxActive(maxActive);
+        poolProperties.setMaxIdle(maxActive);
+        poolProperties.setMaxActivePerKey(maxActive);
+        poolProperties.setMaxIdlePerKey(maxActive);
+        poolProperties.setChannelsPerSession(channelsPerSession);
+        poolProperties.setValidationWindow(validationWindow);
+        if (isKeyed()) {
+            LinkedHashMap<String, SftpProperties> hosts = new LinkedHashMap<>();
+            hosts.put(HOST, sftpProperties());
+            hosts.put("bench-1", sftpProperties());
+            sftpPool = new SftpPool(hosts, poolProperties);
+        } else {
+            sftpPool = new SftpPool(sftpProperties(), poolProperties);
+        }
+        sftpTemplate = new SftpTemplate(sftpPool, transferProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        // The evictor and connections of the pool must not outlive the trial.
+        sftpPool.close();
+        server.close();
+    }
+
+    /**
+     * Select the host for the next template call, the template forgets it after each call.
+     */
+    public void selectHost() {
+        if (isKeyed()) {
+            HostsManage.changeHost(HOST);
+        }
+    }
+
+    public String poolKey() {
+        return isKeyed() ? HOST : null;
+    }
+
+    private boolean isKeyed() {
+        return "keyed".equals(pool);
+    }
+
+    SftpProperties sftpProperties() {
+        SftpProperties sftpProperties = new SftpProperties();
+        sftpProperties.setHost("127.0.0.1");
+        sftpProperties.setPort(server.getPort());
+        sftpProperties.setUsername(SftpServerFixture.USERNAME);
+        sftpProperties.setPassword(SftpServerFixture.PASSWORD);
+        CryptoProfile.valueOf(profile.toUpperCase().replace('-', '_')).apply(sftpProperties);
+        return sftpProperties;
+    }
+
+    private TransferProperties transferProperties() {
+        TransferProperties transferProperties = new TransferProperties();
+        // Small enough that the large file benchmark splits into several segments.
+        transferProperties.setSegmentSize(16L * 1024 * 1024);
+        return transferProperties;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.lihewei7.easysftp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @explain: Small file upload rate and large file throughput.
+ * Large file scores are seconds per file, throughput is {@code largeFileMb / score}.
+ * @author: lihewei
+ */
+@Fork(1)
+public class TransferBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"1024"})
+        public int smallFileBytes;
+
+        @Param({"64"})
+        public int largeFileMb;
+
+        public byte[] smallFile;
+        public Path localDir;
+        public String largeLocal;
+        public String largeDownloaded;
+        private final AtomicLong sequence = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setUp(SftpState state) throws IOException {
+            smallFile = new byte[smallFileBytes];
+            new Random(7).nextBytes(smallFile);
+            Files.createDirectories(state.server.getRoot().resolve("small"));
+
+            localDir = Files.createTempDirectory("easysftp-bench-local");
+            largeLocal = localDir.resolve("large.bin").toString();
+            largeDownloaded = localDir.resolve("large.downloaded").toString();
+            byte[] block = new byte[1024 * 1024];
+            new Random(11).nextBytes(block);
+            try (OutputStream out = Files.newOutputStream(localDir.resolve("large.bin"))) {
+                for (int i = 0; i < largeFileMb; i++) {
+                    out.write(block);
+                }
+            }
+            Files.copy(localDir.resolve("large.bin"), state.server.getRoot().resolve("large.bin"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(localDir.resolve("large.bin"));
+            Files.deleteIfExists(localDir.resolve("large.downloaded"));
+            Files.deleteIfExists(localDir);
+        }
+
+        String nextSmallFile() {
+            // A bounded set of names keeps the remote directory from growing with the iteration count.
+            return "/small/f" + (sequence.incrementAndGet() % 1000);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void smallFileUpload(SftpState state, Data data) throws Exception {
+        state.selectHost();
+        state.sftpTemplate.upload(new ByteArrayInputStream(data.smallFile), data.nextSmallFile());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(4)
+    public void smallFileUploadConcurrent(SftpState state, Data data) throws Exception {
+        smallFileUpload(state, data);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void largeFileUpload(SftpState state, Data data) throws Exception {
+        state.selectHost();
+        state.sftpTemplate.upload(data.largeLocal, "/upload/large.bin");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void largeFileDownload(SftpState state, Data data) throws Exception {
+        state.selectHost();
+        state.sftpTemplate.download("/large.bin", data.largeDownloaded);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void largeFileParallelDownload(SftpState state, Data data) throws Exception {
+        state.selectHost();
+        state.sftpTemplate.parallelDownload("/large.bin", data.largeDownloaded);
+    }
+}
@@ -1,35 +1,103 @@
 package io.github.lihewei7.easysftp.autoconfig;
 
 import com.jcraft.jsch.JSch;
+import io.github.lihewei7.easysftp.config.AsyncProperties;
+import io.github.lihewei7.easysftp.config.PollerProperties;
 import io.github.lihewei7.easysftp.config.PoolProperties;
 import io.github.lihewei7.easysftp.config.SftpProperties;
+import io.github.lihewei7.easysftp.config.TransferProperties;
+import io.github.lihewei7.easysftp.core.AsyncSftpTemplate;
 import io.github.lihewei7.easysftp.core.HostsManage;
 import io.github.lihewei7.easysftp.core.JschLogger;
+import io.github.lihewei7.easysftp.core.SftpPoller;
 import io.github.lihewei7.easysftp.core.SftpPool;
 import io.github.lihewei7.easysftp.core.SftpTemplate;
+import io.github.lihewei7.easysftp.metrics.MicrometerSftpMetrics;
+import io.github.lihewei7.easysftp.reactive.ReactiveSftpTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * @author: lihewei
 */
 @Configuration(proxyBeanMethods = false)
-@EnableConfigurationProperties({SftpProperties.class, PoolProperties.class})
+@AutoConfigureAfter(name = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration"})
+@EnableConfigurationProperties({SftpProperties.class, PoolProperties.class, TransferProperties.class, AsyncProperties.class,
+        PollerProperties.class})
 public class SftpAutoConfiguration {
 
     @Bean
     public SftpPool sftpPool(SftpProperties sftpProperties, PoolProperties poolProperties) {
         JSch.setLogger(new JschLogger(sftpProperties.isEnabledLog()));
-        return sftpProperties.getHosts() == null ?
+        SftpPool sftpPool = sftpProperties.getHosts() == null ?
                 new SftpPool(sftpProperties, poolProperties) :
-                new SftpPool(HostsManage.initHostKeys(sftpProperties.getHosts()),poolProperties);
+                new SftpPool(HostsManage.initHostKeys(sftpProperties.getHosts()), poolProperties, sftpProperties.getGroups());
+        if (poolProperties.isWarmUp() && !poolProperties.isLazyInit()) {
+            sftpPool.warmUp(poolProperties.getWarmUpTimeout());
+        }
+        return sftpPool;
     }
 
     @Bean
     @DependsOn("sftpPool")
-    public SftpTemplate sftpTemplate(SftpPool sftpPool) {
-        return new SftpTemplate(sftpPool);
+    public SftpTemplate sftpTemplate(SftpPool sftpPool, TransferProperties transferProperties) {
+        return new SftpTemplate(sftpPool, transferProperties);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public AsyncSftpTemplate asyncSftpTemplate(SftpTemplate sftpTemplate, SftpPool sftpPool, AsyncProperties asyncProperties) {
+        return new AsyncSftpTemplate(sftpTemplate, sftpPool, asyncProperties);
+    }
+
+    /**
+     * No threads are started before {@link SftpPoller#start()}.
+     */
+    @Bean(destroyMethod = "stop")
+    public SftpPoller sftpPoller(SftpTemplate sftpTemplate, PollerProperties pollerProperties) {
+        return new SftpPoller(sftpTemplate, pollerProperties);
+    }
+
+    /**
+     * Micrometer instrumentation, only when micrometer is on the classpath and a registry exists.
+     * The pool gauges are bound to the registry here, so actuator is not required. When actuator
+     * binds the MeterBinder again, the registry returns the gauges already registered.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    static class SftpMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnBean(MeterRegistry.class)
+        public MicrometerSftpMetrics sftpMetrics(MeterRegistry meterRegistry, SftpPool sftpPool, SftpTemplate sftpTemplate) {
+            MicrometerSftpMetrics sftpMetrics = new MicrometerSftpMetrics(meterRegistry, sftpPool);
+            sftpMetrics.bindTo(meterRegistry);
+            sftpPool.setMetrics(sftpMetrics);
+            sftpTemplate.setMetrics(sftpMetrics);
+            return sftpMetrics;
+        }
+    }
+
+    /**
+     * Reactive transfers, only when reactor is on the classpath.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Flux.class)
+    static class ReactiveSftpConfiguration {
+
+        @Bean
+        public ReactiveSftpTemplate reactiveSftpTemplate(SftpTemplate sftpTemplate, SftpPool sftpPool, TransferProperties transferProperties) {
+            return new ReactiveSftpTemplate(sftpTemplate, sftpPool, transferProperties.getBufferSize(),
+                    ReactiveSftpTemplate.DEFAULT_PREFETCH, Schedulers.boundedElastic());
+        }
     }
 }
@@ -0,0 +1,64 @@
+package io.github.lihewei7.easysftp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.StringJoiner;
+
+/**
+ * @explain: Configuration of the asynchronous template
+ * @author: lihewei
+*/
+@ConfigurationProperties("sftp.async")
+public class AsyncProperties {
+    /**
+     * Maximum number of operations running at the same time, each of them holds one pooled connection.
+     * A value of 0 uses the capacity of the pool, maxActive (maxActivePerKey of all hosts for multiple hosts).
+     * The default value is 0.
+     */
+    private int concurrency = 0;
+
+    /**
+     * Maximum number of operations waiting for a free slot, further operations fail with a
+     * RejectedExecutionException. The default value is 10000.
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * Run operations on virtual threads when the JDK supports them (Java 21 and later),
+     * otherwise on a fixed pool of platform threads. The default value is false.
+     */
+    private boolean virtualThreads = false;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", AsyncProperties.class.getSimpleName() + "[", "]")
+                .add("concurrency=" + concurrency)
+                .add("queueCapacity=" + queueCapacity)
+                .add("virtualThreads=" + virtualThreads)
+                .toString();
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.lihewei7.easysftp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.StringJoiner;
+
+/**
+ * @explain: Configuration of the drop folder poller
+ * @author: lihewei
+*/
+@ConfigurationProperties("sftp.poller")
+public class PollerProperties {
+    /**
+     * Delay between two poll cycles of a host. Unit, milliseconds; The default value is 5000.
+     */
+    private long interval = 5L * 1000L;
+
+    /**
+     * Time the size and mtime of a file must stay unchanged before it is delivered. A file is always
+     * seen unchanged by two polls first, so 0 waits one interval. Unit, milliseconds; The default value is 0.
+     */
+    private long stableTime = 0;
+
+    /**
+     * Number of threads polling hosts, each cycle of a host runs on one thread. The default value is 2.
+     */
+    private int pollThreads = 2;
+
+    /**
+     * Number of files handled at the same time. The default value is 4.
+     */
+    private int handlerThreads = 4;
+
+    /**
+     * Maximum number of delivered files waiting for a handler thread. Files that do not fit are
+     * delivered again by a later poll. The default value is 1000.
+     */
+    private int handlerQueueCapacity = 1000;
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public long getStableTime() {
+        return stableTime;
+    }
+
+    public void setStableTime(long stableTime) {
+        this.stableTime = stableTime;
+    }
+
+    public int getPollThreads() {
+        return pollThreads;
+    }
+
+    public void setPollThreads(int pollThreads) {
+        this.pollThreads = pollThreads;
+    }
+
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    public void setHandlerThreads(int handlerThreads) {
+        this.handlerThreads = handlerThreads;
+    }
+
+    public int getHandlerQueueCapacity() {
+        return handlerQueueCapacity;
+    }
+
+    public void setHandlerQueueCapacity(int handlerQueueCapacity) {
+        this.handlerQueueCapacity = handlerQueueCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", PollerProperties.class.getSimpleName() + "[", "]")
+                .add("interval=" + interval)
+                .add("stableTime=" + stableTime)
+                .add("pollThreads=" + pollThreads)
+                .add("handlerThreads=" + handlerThreads)
+                .add("handlerQueueCapacity=" + handlerQueueCapacity)
+                .toString();
+    }
+}
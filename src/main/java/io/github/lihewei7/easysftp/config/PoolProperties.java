@@ -96,6 +96,69 @@ public class PoolProperties {
      */
     private int maxActivePerKey = 8;
 
+    /**
+     * Maximum number of sftp channels multiplexed over one SSH session of a host.
+     * Pooled connections are channels, so maxActive connections only need
+     * maxActive / channelsPerSession handshakes. Servers usually limit this
+     * (OpenSSH MaxSessions defaults to 10). The default value is 1.
+     */
+    private int channelsPerSession = 1;
+
+    /**
+     * A connection returned to the pool within this window is validated from the transport state
+     * of its session and channel only, without the pwd and lstat round trips. Older connections,
+     * and all connections checked by the idle evictor, get the full check.
+     * Unit, milliseconds; A value of 0 always does the full check. The default value is 0.
+     */
+    private long validationWindow = 0;
+
+    /**
+     * Open minIdle connections of every host in parallel when the pool is created, instead of
+     * one by one on first use. Hosts that can not be reached are logged and skipped.
+     * The default value is false.
+     */
+    private boolean warmUp = false;
+
+    /**
+     * Maximum time the warm-up delays startup. Unit, milliseconds; The default value is 30000.
+     */
+    private long warmUpTimeout = 30L * 1000L;
+
+    /**
+     * Open no connection before the pool is first used, minIdle is only maintained from then on.
+     * It takes precedence over warmUp. The default value is false.
+     */
+    private boolean lazyInit = false;
+
+    /**
+     * Consecutive failed borrows from a host that open its circuit, borrows then fail fast
+     * instead of connecting. 0 disables the circuit breaker. The default value is 0.
+     */
+    private int circuitFailureThreshold = 0;
+
+    /**
+     * Time the circuit stays open before a probe connection is let through, doubled after
+     * every failed probe. Unit, milliseconds; The default value is 5000.
+     */
+    private long circuitOpenTimeout = 5L * 1000L;
+
+    /**
+     * Upper bound of the open time. Unit, milliseconds; The default value is 60000.
+     */
+    private long circuitMaxOpenTimeout = 60L * 1000L;
+
+    /**
+     * Concurrent probe borrows while the circuit is half open. The default value is 1.
+     */
+    private int circuitHalfOpenProbes = 1;
+
+    /**
+     * A session of SftpTemplate#openSession still open after this time is logged as leaked, together
+     * with where it was opened. If its thread has ended the connection is returned to the pool.
+     * Unit, milliseconds; A value of 0 disables the check. The default value is 300000.
+     */
+    private long sessionLeakTimeout = 5L * 60L * 1000L;
+
     public int getMinIdle() {
         return minIdle;
     }
@@ -192,6 +255,86 @@ public class PoolProperties {
         this.maxActivePerKey = maxActivePerKey;
     }
 
+    public int getChannelsPerSession() {
+        return channelsPerSession;
+    }
+
+    public void setChannelsPerSession(int channelsPerSession) {
+        this.channelsPerSession = channelsPerSession;
+    }
+
+    public long getValidationWindow() {
+        return validationWindow;
+    }
+
+    public void setValidationWindow(long validationWindow) {
+        this.validationWindow = validationWindow;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public long getWarmUpTimeout() {
+        return warmUpTimeout;
+    }
+
+    public void setWarmUpTimeout(long warmUpTimeout) {
+        this.warmUpTimeout = warmUpTimeout;
+    }
+
+    public boolean isLazyInit() {
+        return lazyInit;
+    }
+
+    public void setLazyInit(boolean lazyInit) {
+        this.lazyInit = lazyInit;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenTimeout() {
+        return circuitOpenTimeout;
+    }
+
+    public void setCircuitOpenTimeout(long circuitOpenTimeout) {
+        this.circuitOpenTimeout = circuitOpenTimeout;
+    }
+
+    public long getCircuitMaxOpenTimeout() {
+        return circuitMaxOpenTimeout;
+    }
+
+    public void setCircuitMaxOpenTimeout(long circuitMaxOpenTimeout) {
+        this.circuitMaxOpenTimeout = circuitMaxOpenTimeout;
+    }
+
+    public int getCircuitHalfOpenProbes() {
+        return circuitHalfOpenProbes;
+    }
+
+    public void setCircuitHalfOpenProbes(int circuitHalfOpenProbes) {
+        this.circuitHalfOpenProbes = circuitHalfOpenProbes;
+    }
+
+    public long getSessionLeakTimeout() {
+        return sessionLeakTimeout;
+    }
+
+    public void setSessionLeakTimeout(long sessionLeakTimeout) {
+        this.sessionLeakTimeout = sessionLeakTimeout;
+    }
+
     @Override
     public String toString() {
         return new StringJoiner(", ", PoolProperties.class.getSimpleName() + "[", "]")
@@ -207,6 +350,16 @@ public class PoolProperties {
                 .add("minIdlePerKey=" + minIdlePerKey)
                 .add("maxIdlePerKey=" + maxIdlePerKey)
                 .add("maxActivePerKey=" + maxActivePerKey)
+                .add("channelsPerSession=" + channelsPerSession)
+                .add("validationWindow=" + validationWindow)
+                .add("warmUp=" + warmUp)
+                .add("warmUpTimeout=" + warmUpTimeout)
+                .add("lazyInit=" + lazyInit)
+                .add("circuitFailureThreshold=" + circuitFailureThreshold)
+                .add("circuitOpenTimeout=" + circuitOpenTimeout)
+                .add("circuitMaxOpenTimeout=" + circuitMaxOpenTimeout)
+                .add("circuitHalfOpenProbes=" + circuitHalfOpenProbes)
+                .add("sessionLeakTimeout=" + sessionLeakTimeout)
                 .toString();
     }
 }
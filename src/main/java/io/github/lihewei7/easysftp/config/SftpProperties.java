@@ -2,6 +2,7 @@ package io.github.lihewei7.easysftp.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * @explain: SFTP client configuration information
@@ -27,9 +28,49 @@ public class SftpProperties {
      */
     private Boolean isCheckToHostKey = false;
     /**
-     * SSH kex algorithms.
+     * SSH kex algorithms, comma separated in order of preference.
+     * The default value is diffie-hellman-group1-sha1,diffie-hellman-group-exchange-sha1,diffie-hellman-group-exchange-sha256.
      */
     private String kex;
+    /**
+     * Ciphers, comma separated in order of preference, for example aes128-ctr,aes256-ctr.
+     * Empty uses the JSch defaults.
+     */
+    private String ciphers;
+    /**
+     * MAC algorithms, comma separated in order of preference, for example hmac-sha2-256,hmac-sha1.
+     * Empty uses the JSch defaults.
+     */
+    private String macs;
+    /**
+     * Compression, comma separated in order of preference, for example zlib@openssh.com,zlib,none.
+     * Compression helps on slow links with compressible files and costs CPU on fast links.
+     * Empty disables compression.
+     */
+    private String compression;
+    /**
+     * Outstanding read requests of one download, throughput is about bulkRequests * 32KB / RTT.
+     * 0 uses the JSch default of 16.
+     */
+    private int bulkRequests = 0;
+    /**
+     * Upper bound of bulkRequests reached by the auto tuner. The default value is 128.
+     */
+    private int maxBulkRequests = 128;
+    /**
+     * Size of the copy buffers of this host, 0 uses sftp.transfer.buffer-size. Unit, bytes.
+     */
+    private int bufferSize = 0;
+    /**
+     * Receive window of the sftp channel, it must hold the bytes of all outstanding requests.
+     * 0 uses the JSch default of 2MB. Unit, bytes.
+     */
+    private int windowSize = 0;
+    /**
+     * Measure RTT and download throughput and raise bulkRequests while downloads are
+     * limited by the request pipeline, lower it again while they are not.
+     */
+    private boolean autoTune = false;
     /**
      * host key.
      */
@@ -38,6 +79,11 @@ public class SftpProperties {
      * Configuring multiple hosts.
      */
     private LinkedHashMap<String,SftpProperties> hosts;
+    /**
+     * Host groups of multiple hosts, group name to the keys of its identical member hosts.
+     * A call for a group goes to the least busy healthy member.
+     */
+    private LinkedHashMap<String, List<String>> groups;
 
     public LinkedHashMap<String, SftpProperties> getHosts() {
         return hosts;
@@ -47,6 +93,14 @@ public class SftpProperties {
         this.hosts = hosts;
     }
 
+    public LinkedHashMap<String, List<String>> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(LinkedHashMap<String, List<String>> groups) {
+        this.groups = groups;
+    }
+
     public String getHost() {
         return host;
     }
@@ -111,6 +165,70 @@ public class SftpProperties {
         this.kex = kex;
     }
 
+    public String getCiphers() {
+        return ciphers;
+    }
+
+    public void setCiphers(String ciphers) {
+        this.ciphers = ciphers;
+    }
+
+    public String getMacs() {
+        return macs;
+    }
+
+    public void setMacs(String macs) {
+        this.macs = macs;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public int getBulkRequests() {
+        return bulkRequests;
+    }
+
+    public void setBulkRequests(int bulkRequests) {
+        this.bulkRequests = bulkRequests;
+    }
+
+    public int getMaxBulkRequests() {
+        return maxBulkRequests;
+    }
+
+    public void setMaxBulkRequests(int maxBulkRequests) {
+        this.maxBulkRequests = maxBulkRequests;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public boolean isAutoTune() {
+        return autoTune;
+    }
+
+    public void setAutoTune(boolean autoTune) {
+        this.autoTune = autoTune;
+    }
+
     public String getKeyPath() {
         return keyPath;
     }
@@ -0,0 +1,215 @@
+package io.github.lihewei7.easysftp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.io.File;
+import java.util.StringJoiner;
+
+/**
+ * @explain: File transfer configuration information
+ * @author: lihewei
+*/
+@ConfigurationProperties("sftp.transfer")
+public class TransferProperties {
+    /**
+     * Size of the buffers used to copy file content between streams and sftp.
+     * Unit, bytes; The default value is 32KB.
+     */
+    private int bufferSize = 32 * 1024;
+
+    /**
+     * Size of one byte range fetched by a segmented download. Files that are not larger
+     * than one segment are downloaded on a single connection. Unit, bytes; The default value is 64MB.
+     */
+    private long segmentSize = 64L * 1024L * 1024L;
+
+    /**
+     * Maximum number of pooled connections used concurrently by one segmented download.
+     * It should not exceed maxActive (maxActivePerKey for multiple hosts). The default value is 4.
+     */
+    private int segmentParallelism = 4;
+
+    /**
+     * Number of times a failed segment is downloaded again on its own before the
+     * whole download fails. The default value is 3.
+     */
+    private int segmentRetries = 3;
+
+    /**
+     * Number of worker threads, and so of pooled connections, used by one directory
+     * upload or download. The default value is 4.
+     */
+    private int directoryParallelism = 4;
+
+    /**
+     * Number of pooled connections that upload the files of one uploadSmallFiles call side by side.
+     * It should not exceed maxActive (maxActivePerKey for multiple hosts). The default value is 4.
+     */
+    private int bulkUploadLanes = 4;
+
+    /**
+     * Maximum number of remote directories per host remembered as existing, so that uploads
+     * into them skip the directory check. Least recently used entries are evicted first.
+     * A value of 0 disables the cache. The default value is 1024.
+     */
+    private int directoryCacheSize = 1024;
+
+    /**
+     * Time after which a remote directory is checked again. Unit, milliseconds;
+     * The default value is 60000.
+     */
+    private long directoryCacheTtl = 60L * 1000L;
+
+    /**
+     * Local directory of the checkpoint journals of resumable transfers. It must survive a restart
+     * of the process for transfers to resume after it. The default value is ${java.io.tmpdir}/easysftp-journal.
+     */
+    private String journalDir = System.getProperty("java.io.tmpdir") + File.separator + "easysftp-journal";
+
+    /**
+     * Number of bytes transferred between two checkpoints of a resumable transfer.
+     * Unit, bytes; The default value is 4MB.
+     */
+    private long journalInterval = 4L * 1024L * 1024L;
+
+    /**
+     * Read and write local files of uploads and downloads through FileChannel with pooled direct
+     * buffers of bufferSize, instead of the file streams of JSch. The default value is false.
+     */
+    private boolean directIo = false;
+
+    /**
+     * With directIo, local files of at least this size are memory mapped. 0 disables mapping.
+     * Unit, bytes; The default value is 0.
+     */
+    private long mmapThreshold = 0;
+
+    /**
+     * With directIo, extend a download destination to the remote file size before writing it.
+     * Costs one stat request per download. The default value is false.
+     */
+    private boolean preallocate = false;
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getSegmentParallelism() {
+        return segmentParallelism;
+    }
+
+    public void setSegmentParallelism(int segmentParallelism) {
+        this.segmentParallelism = segmentParallelism;
+    }
+
+    public int getSegmentRetries() {
+        return segmentRetries;
+    }
+
+    public void setSegmentRetries(int segmentRetries) {
+        this.segmentRetries = segmentRetries;
+    }
+
+    public int getDirectoryParallelism() {
+        return directoryParallelism;
+    }
+
+    public void setDirectoryParallelism(int directoryParallelism) {
+        this.directoryParallelism = directoryParallelism;
+    }
+
+    public int getBulkUploadLanes() {
+        return bulkUploadLanes;
+    }
+
+    public void setBulkUploadLanes(int bulkUploadLanes) {
+        this.bulkUploadLanes = bulkUploadLanes;
+    }
+
+    public int getDirectoryCacheSize() {
+        return directoryCacheSize;
+    }
+
+    public void setDirectoryCacheSize(int directoryCacheSize) {
+        this.directoryCacheSize = directoryCacheSize;
+    }
+
+    public long getDirectoryCacheTtl() {
+        return directoryCacheTtl;
+    }
+
+    public void setDirectoryCacheTtl(long directoryCacheTtl) {
+        this.directoryCacheTtl = directoryCacheTtl;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public long getJournalInterval() {
+        return journalInterval;
+    }
+
+    public void setJournalInterval(long journalInterval) {
+        this.journalInterval = journalInterval;
+    }
+
+    public boolean isDirectIo() {
+        return directIo;
+    }
+
+    public void setDirectIo(boolean directIo) {
+        this.directIo = directIo;
+    }
+
+    public long getMmapThreshold() {
+        return mmapThreshold;
+    }
+
+    public void setMmapThreshold(long mmapThreshold) {
+        this.mmapThreshold = mmapThreshold;
+    }
+
+    public boolean isPreallocate() {
+        return preallocate;
+    }
+
+    public void setPreallocate(boolean preallocate) {
+        this.preallocate = preallocate;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", TransferProperties.class.getSimpleName() + "[", "]")
+                .add("bufferSize=" + bufferSize)
+                .add("segmentSize=" + segmentSize)
+                .add("segmentParallelism=" + segmentParallelism)
+                .add("segmentRetries=" + segmentRetries)
+                .add("directoryParallelism=" + directoryParallelism)
+                .add("bulkUploadLanes=" + bulkUploadLanes)
+                .add("directoryCacheSize=" + directoryCacheSize)
+                .add("directoryCacheTtl=" + directoryCacheTtl)
+                .add("journalDir=" + journalDir)
+                .add("journalInterval=" + journalInterval)
+                .add("directIo=" + directIo)
+                .add("mmapThreshold=" + mmapThreshold)
+                .add("preallocate=" + preallocate)
+                .toString();
+    }
+}
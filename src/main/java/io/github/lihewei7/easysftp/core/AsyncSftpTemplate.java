@@ -0,0 +1,325 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import io.github.lihewei7.easysftp.config.AsyncProperties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @explain: Asynchronous variant of {@link SftpTemplate}, every operation returns a CompletableFuture.
+ * Operations are queued and run by at most sftp.async.concurrency workers, which is not more than the
+ * pool can lend out, and callers never block. With multiple hosts, operations of a host beyond what the
+ * pool lends out for that host (maxActivePerKey) wait in a queue of the host and are handed to a worker
+ * when one of its operations ends, so workers do not pile up in borrowObject of one busy host.
+ * The host selected with {@link HostsManage#changeHost(String)} is taken from the calling thread.
+ * Cancelling a returned future drops the operation if it is still queued, a running upload or download
+ * stops at its next chunk and leaves the partial file in place, it is recorded as a failed operation
+ * with the bytes sent until then. Other running operations complete.
+ * @author: lihewei
+ */
+public class AsyncSftpTemplate {
+    private static final Log _logger = LogFactory.getLog(AsyncSftpTemplate.class);
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private final SftpTemplate sftpTemplate;
+    private final SftpPool sftpPool;
+    private final ThreadPoolExecutor executor;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final Map<String, HostQueue> hostQueues = new ConcurrentHashMap<>();
+    private final AtomicInteger hostWaiting = new AtomicInteger();
+
+    public AsyncSftpTemplate(SftpTemplate sftpTemplate, SftpPool sftpPool) {
+        this(sftpTemplate, sftpPool, new AsyncProperties());
+    }
+
+    public AsyncSftpTemplate(SftpTemplate sftpTemplate, SftpPool sftpPool, AsyncProperties asyncProperties) {
+        this.sftpTemplate = sftpTemplate;
+        this.sftpPool = sftpPool;
+        int concurrency = asyncProperties.getConcurrency() > 0 ? asyncProperties.getConcurrency() : sftpPool.getMaxActive();
+        if (concurrency <= 0) {
+            concurrency = DEFAULT_CONCURRENCY;
+        }
+        this.concurrency = concurrency;
+        this.queueCapacity = Math.max(1, asyncProperties.getQueueCapacity());
+        ThreadFactory threadFactory = asyncProperties.isVirtualThreads() ? virtualThreadFactory() : null;
+        if (threadFactory == null) {
+            threadFactory = platformThreadFactory();
+        }
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @see SftpTemplate#execute(SftpCallback)
+     */
+    public <T> CompletableFuture<T> execute(SftpCallback<T> action) {
+        return submit(monitor -> sftpTemplate.execute(action));
+    }
+
+    /**
+     * @see SftpTemplate#executeWithoutResult(SftpCallbackWithoutResult)
+     */
+    public CompletableFuture<Void> executeWithoutResult(SftpCallbackWithoutResult action) {
+        return submit(monitor -> {
+            sftpTemplate.executeWithoutResult(action);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#download(String, String)
+     */
+    public CompletableFuture<Void> download(String from, String to) {
+        return submit(monitor -> {
+            sftpTemplate.download(from, to, monitor);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#upload(String, String)
+     */
+    public CompletableFuture<Void> upload(String from, String to) {
+        return submit(monitor -> {
+            sftpTemplate.upload(from, to, monitor);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#exists(String)
+     */
+    public CompletableFuture<Boolean> exists(String path) {
+        return submit(monitor -> sftpTemplate.exists(path));
+    }
+
+    /**
+     * @see SftpTemplate#list(String)
+     */
+    public CompletableFuture<ChannelSftp.LsEntry[]> list(String path) {
+        return submit(monitor -> sftpTemplate.list(path));
+    }
+
+    /**
+     * Number of operations waiting for a worker or for a connection of their host.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size() + hostWaiting.get();
+    }
+
+    /**
+     * Stop accepting operations, queued operations still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        String hostName;
+        try {
+            hostName = sftpPool.isUniqueHost() ? null : HostsManage.getHostName();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        } finally {
+            HostsManage.clear();
+        }
+        HostTask task = new HostTask(future, () -> run(future, hostName, operation));
+        HostQueue queue = hostName == null ? null : hostQueues.computeIfAbsent(hostName, this::hostQueue);
+        if (queue == null) {
+            try {
+                executor.execute(task.body);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        } else if (queue.admit(task)) {
+            if (!dispatch(queue, task)) {
+                future.completeExceptionally(new RejectedExecutionException("Operation rejected, queue is full or shut down"));
+                finish(queue);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Queue of a host whose connections are fewer than the workers, null if the host needs none.
+     */
+    private HostQueue hostQueue(String hostName) {
+        int limit = sftpPool.getMaxActive(hostName);
+        return limit > 0 && limit < concurrency ? new HostQueue(limit) : null;
+    }
+
+    private boolean dispatch(HostQueue queue, HostTask task) {
+        try {
+            executor.execute(() -> runOnHost(queue, task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run the task and hand the next waiting operation of the host to a worker. After shutdown,
+     * or if the worker queue is full, the next one runs on this worker instead.
+     */
+    private void runOnHost(HostQueue queue, HostTask task) {
+        while (task != null) {
+            task.body.run();
+            task = queue.next();
+            if (task != null && dispatch(queue, task)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Release the slot of an operation that did not run, waiting ones of the host still get it.
+     */
+    private void finish(HostQueue queue) {
+        HostTask next = queue.next();
+        if (next != null && !dispatch(queue, next)) {
+            next.future.completeExceptionally(new RejectedExecutionException("Operation rejected, queue is full or shut down"));
+            finish(queue);
+        }
+    }
+
+    private <T> void run(CompletableFuture<T> future, String hostName, Operation<T> operation) {
+        if (future.isDone()) {
+            // Cancelled while queued.
+            return;
+        }
+        try {
+            if (hostName != null) {
+                HostsManage.changeHost(hostName);
+            }
+            future.complete(operation.run(new CancellationMonitor(future)));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            HostsManage.clearHost();
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "easysftp-async-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Thread.ofVirtual().name("easysftp-async-", 1).factory(), looked up by reflection
+     * because the starter is compiled for Java 8.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "easysftp-async-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            _logger.warn("Easysftp: virtual threads are not supported by this JDK, using platform threads");
+            return null;
+        }
+    }
+
+    private static class HostTask {
+        private final CompletableFuture<?> future;
+        private final Runnable body;
+
+        HostTask(CompletableFuture<?> future, Runnable body) {
+            this.future = future;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Operations of one host, at most limit of them are handed to workers at the same time.
+     */
+    private class HostQueue {
+        private final int limit;
+        private final Queue<HostTask> waiting = new ArrayDeque<>();
+        private int running;
+
+        HostQueue(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * True if the task may run now, otherwise it waits in the queue of the host.
+         */
+        synchronized boolean admit(HostTask task) {
+            if (running < limit) {
+                running++;
+                return true;
+            }
+            if (executor.isShutdown() || executor.getQueue().size() + hostWaiting.get() >= queueCapacity) {
+                task.future.completeExceptionally(new RejectedExecutionException("Operation rejected, queue is full or shut down"));
+                return false;
+            }
+            waiting.add(task);
+            hostWaiting.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * The next waiting task, which keeps the slot of the one that ended, or null and the slot is freed.
+         */
+        synchronized HostTask next() {
+            HostTask next = waiting.poll();
+            if (next == null) {
+                running--;
+            } else {
+                hostWaiting.decrementAndGet();
+            }
+            return next;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run(SftpProgressMonitor monitor) throws SftpException;
+    }
+
+    /**
+     * Lets JSch stop a running transfer once the future was cancelled.
+     */
+    private static class CancellationMonitor implements SftpProgressMonitor {
+        private final CompletableFuture<?> future;
+
+        CancellationMonitor(CompletableFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void init(int op, String src, String dest, long max) {
+        }
+
+        @Override
+        public boolean count(long count) {
+            return !future.isCancelled();
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @explain: Outcome of every operation of a batch, in the order they were run.
+ * A failed operation is recorded with its exception and does not stop the others.
+ * @author: lihewei
+ */
+public class BatchResult {
+    private final List<Item<?>> items = new ArrayList<>();
+    private int failed;
+
+    <T> Item<T> add(Item<T> item) {
+        items.add(item);
+        if (!item.isSuccess()) {
+            failed++;
+        }
+        return item;
+    }
+
+    public List<Item<?>> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Paths of the failed operations and their cause.
+     */
+    public Map<String, Exception> getFailures() {
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        for (Item<?> item : items) {
+            if (!item.isSuccess()) {
+                failures.put(item.getPath(), item.getError());
+            }
+        }
+        return failures;
+    }
+
+    public int getSucceededCount() {
+        return items.size() - failed;
+    }
+
+    public int getFailedCount() {
+        return failed;
+    }
+
+    public boolean isSuccess() {
+        return failed == 0;
+    }
+
+    @Override
+    public String toString() {
+        return BatchResult.class.getSimpleName() + "[succeeded=" + getSucceededCount() + ", failed=" + failed + "]";
+    }
+
+    /**
+     * One operation of a batch.
+     * @param <T> type of the value, Void for uploads and downloads.
+     */
+    public static class Item<T> {
+        private final String operation;
+        private final String path;
+        private final T value;
+        private final Exception error;
+
+        Item(String operation, String path, T value, Exception error) {
+            this.operation = operation;
+            this.path = path;
+            this.value = value;
+            this.error = error;
+        }
+
+        /**
+         * Name of the batch method, such as "upload".
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Remote path of the operation.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Value returned by the operation, null if it failed.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " " + path + (error == null ? " ok" : " failed: " + error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @explain: Host selected on the calling thread, taken for work that goes on on other threads.
+ * Capturing uses up the host like a template call does, calling binds it again for the action.
+ * @author: lihewei
+ */
+public final class CapturedHost {
+    private final String hostName;
+
+    private CapturedHost(String hostName) {
+        this.hostName = hostName;
+    }
+
+    /**
+     * Take the host bound to the calling thread.
+     * @throws IllegalArgumentException if there are multiple hosts and none is bound.
+     */
+    public static CapturedHost capture(SftpPool sftpPool) {
+        try {
+            return new CapturedHost(sftpPool.isUniqueHost() ? null : HostsManage.getHostName());
+        } finally {
+            HostsManage.clear();
+        }
+    }
+
+    /**
+     * Null for a single host.
+     */
+    public String getHostName() {
+        return hostName;
+    }
+
+    /**
+     * Run the action with the captured host bound to the current thread.
+     */
+    public <T> T call(Callable<T> action) throws Exception {
+        if (hostName != null) {
+            HostsManage.changeHost(hostName);
+        }
+        try {
+            return action.call();
+        } finally {
+            HostsManage.clearHost();
+        }
+    }
+}
@@ -1,17 +1,61 @@
 package io.github.lihewei7.easysftp.core;
 
 import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
 import org.springframework.util.Assert;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class ChannelSftpWrapper {
+    public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
     private final ChannelSftp channelSftp;
+    private final int bufferSize;
+    private final RemoteDirectoryCache directoryCache;
+    private final TransferTuning tuning;
+    private final LocalFileIo localIo;
 
     public ChannelSftpWrapper(ChannelSftp channelSftp) {
+        this(channelSftp, DEFAULT_BUFFER_SIZE, null);
+    }
+
+    /**
+     * @param bufferSize     size of the copy buffers.
+     * @param directoryCache directories of the host known to exist, may be null.
+     */
+    public ChannelSftpWrapper(ChannelSftp channelSftp, int bufferSize, RemoteDirectoryCache directoryCache) {
+        this(channelSftp, bufferSize, directoryCache, null, null);
+    }
+
+    /**
+     * @param tuning  transfer settings of the host, may be null.
+     * @param localIo local file side of transfers, null for the JSch file streams.
+     */
+    ChannelSftpWrapper(ChannelSftp channelSftp, int bufferSize, RemoteDirectoryCache directoryCache,
+                       TransferTuning tuning, LocalFileIo localIo) {
         this.channelSftp = channelSftp;
+        if (tuning != null && tuning.getBufferSize() > 0) {
+            bufferSize = tuning.getBufferSize();
+        }
+        this.bufferSize = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+        this.directoryCache = directoryCache;
+        this.tuning = tuning;
+        this.localIo = localIo;
     }
 
     /**
@@ -22,15 +66,103 @@ public class ChannelSftpWrapper {
      * @throws SftpException
      */
     public void download(String from, String to) throws SftpException {
+        download(from, to, null);
+    }
+
+    /**
+     * Download with progress, the transfer stops early when the monitor returns false from count.
+     * @see SftpTemplate#download(String, String, SftpProgressMonitor)
+     * @param monitor receives the progress, may be null
+     * @throws SftpException
+     */
+    public void download(String from, String to, SftpProgressMonitor monitor) throws SftpException {
         Assert.hasLength(from, "from must not be null");
         Assert.hasLength(to, "to must not be null");
         try {
-            channelSftp.get(from, to);
+            if (localIo != null) {
+                get(from, new File(to), monitor, null);
+            } else {
+                channelSftp.get(from, to, tune(monitor));
+            }
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw new SftpException(e.id, "remote file '" + from + "' not exists.");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Download a file, continuing after the bytes confirmed by the journal of a previous attempt
+     * if the remote file still has the recorded size and mtime.
+     * @see SftpTemplate#resumableDownload(String, String)
+     * @param from    Path of the remote file
+     * @param to      Path after downloading the file to a local directory
+     * @param journal checkpoint of this transfer
+     * @throws SftpException
+     */
+    public void resumableDownload(String from, String to, TransferJournal journal) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        SftpATTRS attrs = stat(from);
+        File local = new File(to);
+        long offset = 0;
+        if (journal.load() && journal.matches(from, attrs.getSize(), attrs.getMTime())
+                && local.isFile() && local.length() >= journal.getConfirmed()) {
+            offset = journal.getConfirmed();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(local, "rw")) {
+            // Bytes after the last checkpoint are not trusted and fetched again.
+            file.setLength(offset);
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to prepare local file '" + to + "'.", e);
+        }
+        // In RESUME mode JSch reports the skipped bytes to the monitor, so the journal starts at zero.
+        journal.begin(from, attrs.getSize(), attrs.getMTime(), 0);
+        tune(null);
+        try (OutputStream out = new FileOutputStream(local, true)) {
+            channelSftp.get(from, out, journal, ChannelSftp.RESUME, offset);
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to write local file '" + to + "'.", e);
+        }
+        journal.complete();
+    }
+
+    /**
+     * Download one byte range of a remote file into the same range of a local file.
+     * @see SftpTemplate#parallelDownload(String, String)
+     * @param from   Path of the remote file
+     * @param to     Local file channel, written with positional writes
+     * @param offset Position of the first byte of the range
+     * @param length Number of bytes of the range
+     * @throws SftpException
+     */
+    public void downloadRange(String from, FileChannel to, long offset, long length) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.notNull(to, "to must not be null");
+        byte[] buffer = new byte[(int) Math.min(bufferSize, Math.max(length, 1))];
+        tune(null);
+        try (InputStream in = channelSftp.get(from, null, offset)) {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new SftpException(ChannelSftp.SSH_FX_EOF, "remote file '" + from + "' ended at " + position + ", expected " + (offset + length) + " bytes.");
+                }
+                ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+                while (src.hasRemaining()) {
+                    position += to.write(src, position);
+                }
+                remaining -= read;
+            }
         } catch (SftpException e) {
             if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
                 throw new SftpException(e.id, "remote file '" + from + "' not exists.");
             }
             throw e;
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to download range [" + offset + ", " + (offset + length) + ") of '" + from + "'.", e);
         }
     }
 
@@ -42,16 +174,307 @@ public class ChannelSftpWrapper {
      * @throws SftpException
      */
     public void upload(String from, String to) throws SftpException {
+        upload(from, to, null);
+    }
+
+    /**
+     * Upload with progress, the transfer stops early when the monitor returns false from count.
+     * @see SftpTemplate#upload(String, String, SftpProgressMonitor)
+     * @param monitor receives the progress, may be null
+     * @throws SftpException
+     */
+    public void upload(String from, String to, SftpProgressMonitor monitor) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        if (!new File(from).exists()) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "local file '" + from + "' not exists.", new FileNotFoundException(from));
+        }
+        writeFile(to, target -> {
+            put(from, target, monitor, null);
+            return null;
+        });
+    }
+
+    /**
+     * Upload into an existing remote directory, no directory is created or entered.
+     * @param from Local source file path
+     * @param to   Remote path after the file is uploaded
+     * @throws SftpException
+     */
+    public void put(String from, String to) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        put(from, to, null, null);
+    }
+
+    /**
+     * Download and compute the checksum of the file while it is written, without reading it again.
+     * A file that does not match the expected checksum is deleted.
+     * @see SftpTemplate#download(String, String, ChecksumAlgorithm, String)
+     * @param expected checksum as hex, null to only compute it
+     * @return checksum of the downloaded bytes as lower case hex
+     * @throws SftpException
+     */
+    public String download(String from, String to, ChecksumAlgorithm algorithm, String expected) throws SftpException {
         Assert.hasLength(from, "from must not be null");
         Assert.hasLength(to, "to must not be null");
+        Assert.notNull(algorithm, "algorithm must not be null");
+        ChecksumAlgorithm.Digest digest = algorithm.newDigest();
+        File local;
+        try {
+            local = get(from, new File(to), null, digest);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw new SftpException(e.id, "remote file '" + from + "' not exists.");
+            }
+            throw e;
+        }
+        String actual = digest.hex();
+        if (expected != null && !expected.equalsIgnoreCase(actual)) {
+            local.delete();
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, algorithm + " of remote file '" + from + "' is " + actual + ", expected " + expected + ".");
+        }
+        return actual;
+    }
+
+    /**
+     * Upload and compute the checksum of the local file while it is read, without reading it again.
+     * The checksum verifies the source, the remote file is only checked to have the size of the
+     * bytes sent, since sftp can not compute a checksum on the server. A remote file that does not
+     * match the size or the expected checksum is removed.
+     * @see SftpTemplate#upload(String, String, ChecksumAlgorithm, String)
+     * @param expected checksum of the local file as hex, null to only compute it
+     * @return checksum of the bytes read from the local file as lower case hex
+     * @throws SftpException
+     */
+    public String upload(String from, String to, ChecksumAlgorithm algorithm, String expected) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        Assert.notNull(algorithm, "algorithm must not be null");
         if (!new File(from).exists()) {
             throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "local file '" + from + "' not exists.", new FileNotFoundException(from));
         }
-        String dir = to.substring(0, to.lastIndexOf(File.separator) + 1);
-        if (!"".equals(dir)) {
-            cdAndMkdir(dir);
+        ChecksumAlgorithm.Digest digest = algorithm.newDigest();
+        long sent = writeFile(to, path -> put(from, path, null, digest));
+        long size = channelSftp.stat(to).getSize();
+        if (size != sent) {
+            channelSftp.rm(to);
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "remote file '" + to + "' has " + size + " bytes, " + sent + " were uploaded.");
+        }
+        String actual = digest.hex();
+        if (expected != null && !expected.equalsIgnoreCase(actual)) {
+            channelSftp.rm(to);
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, algorithm + " of local file '" + from + "' is " + actual + ", expected " + expected + ".");
+        }
+        return actual;
+    }
+
+    /**
+     * Upload a local file, through a stream when the local file side or a checksum needs one.
+     * @param digest receives the uploaded bytes, may be null
+     * @return number of bytes read from the local file, -1 if JSch read the file itself
+     */
+    private long put(String from, String to, SftpProgressMonitor monitor, ChecksumAlgorithm.Digest digest) throws SftpException {
+        if (localIo == null && digest == null) {
+            channelSftp.put(from, to, monitor);
+            return -1L;
+        }
+        File local = new File(from);
+        try (InputStream in = localIo != null ? localIo.openInput(local) : new FileInputStream(local)) {
+            CountingStreams.In src = new CountingStreams.In(digest == null ? in : new DigestStreams.In(in, digest));
+            channelSftp.put(src, to, monitor == null ? null : new LocalFileMonitor(monitor, from, local.length()), ChannelSftp.OVERWRITE);
+            return src.getCount();
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to read local file '" + from + "'.", e);
+        }
+    }
+
+    /**
+     * Download into a local file through a stream, like JSch a directory gets the remote file name
+     * and a file that did not exist before is removed again if the download fails.
+     * @param digest receives the downloaded bytes, may be null
+     * @return the local file written
+     */
+    private File get(String from, File to, SftpProgressMonitor monitor, ChecksumAlgorithm.Digest digest) throws SftpException {
+        if (to.isDirectory()) {
+            to = new File(to, from.substring(from.lastIndexOf('/') + 1));
+        }
+        long size = localIo != null && localIo.needsSize() ? stat(from).getSize() : -1;
+        boolean existed = to.exists();
+        boolean success = false;
+        try (OutputStream out = localIo != null ? localIo.openOutput(to, size) : new FileOutputStream(to)) {
+            channelSftp.get(from, digest == null ? out : new DigestStreams.Out(out, digest), tune(monitor));
+            success = true;
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to write local file '" + to + "'.", e);
+        } finally {
+            if (!success && !existed) {
+                to.delete();
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Stream upload: write everything read from the stream to sftp, the stream is not closed.
+     * @see SftpTemplate#upload(InputStream, String)
+     * @param from Source of the file content
+     * @param to   Remote path after the file is uploaded
+     * @throws SftpException
+     */
+    public void upload(InputStream from, String to) throws SftpException {
+        Assert.notNull(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        writeFile(to, target -> {
+            channelSftp.put(from, target);
+            return null;
+        });
+    }
+
+    /**
+     * Stream download: write the remote file to the stream, the stream is not closed.
+     * @see SftpTemplate#download(String, OutputStream)
+     * @param from Path of the remote file
+     * @param to   Destination of the file content
+     * @throws SftpException
+     */
+    public void download(String from, OutputStream to) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.notNull(to, "to must not be null");
+        BufferedOutputStream out = new BufferedOutputStream(to, bufferSize);
+        try {
+            channelSftp.get(from, out, tune(null));
+            out.flush();
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw new SftpException(e.id, "remote file '" + from + "' not exists.");
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to write content of '" + from + "'.", e);
+        }
+    }
+
+    /**
+     * Open the remote file for reading, closing the stream closes the remote file.
+     * @see SftpTemplate#openInputStream(String)
+     * @param from Path of the remote file
+     * @throws SftpException
+     */
+    public InputStream openInputStream(String from) throws SftpException {
+        return openInputStream(from, 0L);
+    }
+
+    /**
+     * Open the remote file for reading from the given byte, closing the stream closes the remote file.
+     * @see SftpTemplate#openInputStream(String, long)
+     * @param from   Path of the remote file
+     * @param offset number of bytes skipped at the start of the file
+     * @throws SftpException
+     */
+    public InputStream openInputStream(String from, long offset) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        try {
+            tune(null);
+            return new BufferedInputStream(channelSftp.get(from, null, offset), bufferSize);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw new SftpException(e.id, "remote file '" + from + "' not exists.");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Create the remote file for writing, its parent directories are created if missing.
+     * Closing the stream closes the remote file.
+     * @see SftpTemplate#openOutputStream(String)
+     * @param to Remote path of the file
+     * @throws SftpException
+     */
+    public OutputStream openOutputStream(String to) throws SftpException {
+        Assert.hasLength(to, "to must not be null");
+        return new BufferedOutputStream(writeFile(to, channelSftp::put), bufferSize);
+    }
+
+    /**
+     * Upload a file, continuing after the bytes already stored in the remote file if the journal
+     * of a previous attempt was taken for the same local file (size and mtime) and the remote
+     * file is not larger than it.
+     * @see SftpTemplate#resumableUpload(String, String)
+     * @param from    Local source file path
+     * @param to      Remote path after the file is uploaded
+     * @param journal checkpoint of this transfer
+     * @throws SftpException
+     */
+    public void resumableUpload(String from, String to, TransferJournal journal) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        File local = new File(from);
+        if (!local.exists()) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "local file '" + from + "' not exists.", new FileNotFoundException(from));
+        }
+        writeFile(to, target -> {
+            int mode = ChannelSftp.OVERWRITE;
+            long offset = 0;
+            if (journal.load() && journal.matches(to, local.length(), local.lastModified())) {
+                SftpATTRS remote = statIfExists(target);
+                if (remote != null && remote.getSize() <= local.length()) {
+                    mode = ChannelSftp.RESUME;
+                    offset = remote.getSize();
+                }
+            }
+            journal.begin(to, local.length(), local.lastModified(), offset);
+            try (InputStream in = new FileInputStream(local)) {
+                channelSftp.put(in, target, journal, mode);
+            } catch (IOException e) {
+                throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to read local file '" + from + "'.", e);
+            }
+            return null;
+        });
+        journal.complete();
+    }
+
+    /**
+     * Write a remote file whose parent directory is created if missing. The parent is looked up in
+     * the directory cache first, a hit writes straight to the path without any directory round trip.
+     * If a cached directory turns out to be removed, it and its cached ancestors are invalidated,
+     * the missing levels are created and the file is written again.
+     */
+    private <T> T writeFile(String to, RemoteWrite<T> write) throws SftpException {
+        int slash = to.lastIndexOf('/');
+        if (slash < 0) {
+            return write.write(to);
+        }
+        String dir = slash == 0 ? "/" : to.substring(0, slash);
+        if (directoryCache != null && directoryCache.contains(absolute(dir))) {
+            try {
+                return write.write(to);
+            } catch (SftpException e) {
+                if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                    throw e;
+                }
+                directoryCache.invalidateMissing(absolute(dir));
+            }
+        }
+        mkdirs(dir);
+        return write.write(to);
+    }
+
+    /**
+     * Set the outstanding read requests of the host before a download.
+     * @return the monitor, wrapped to measure the download when the host is auto tuned.
+     */
+    private SftpProgressMonitor tune(SftpProgressMonitor monitor) throws SftpException {
+        if (tuning == null) {
+            return monitor;
+        }
+        try {
+            tuning.apply(channelSftp);
+        } catch (JSchException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to set bulk requests.", e);
         }
-        channelSftp.put(from, to.substring(to.lastIndexOf(File.separator) + 1));
+        return tuning.measure(monitor);
     }
 
     /**
@@ -101,6 +524,40 @@ public class ChannelSftpWrapper {
         }
     }
 
+    /**
+     * Create the remote directory and its missing parents without changing the working directory.
+     * @param path the remote path.
+     * @throws SftpException
+     */
+    public void mkdirs(String path) throws SftpException {
+        Assert.hasLength(path, "path must not be null");
+        String dir = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        if (directoryCache != null && directoryCache.contains(absolute(dir))) {
+            return;
+        }
+        if (!isDir(dir)) {
+            int slash = dir.lastIndexOf('/');
+            String parent = slash > 0 ? dir.substring(0, slash) : null;
+            if (parent != null) {
+                mkdirs(parent);
+            }
+            try {
+                mkdir(dir);
+            } catch (SftpException e) {
+                if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE || parent == null || directoryCache == null) {
+                    throw e;
+                }
+                // The parent was cached but has been removed since, create the missing levels.
+                directoryCache.invalidateMissing(absolute(parent));
+                mkdirs(parent);
+                mkdir(dir);
+            }
+        }
+        if (directoryCache != null) {
+            directoryCache.add(absolute(dir));
+        }
+    }
+
     /**
      * Create Routes
      * @param path the remote path.
@@ -110,10 +567,55 @@ public class ChannelSftpWrapper {
         try {
             this.channelSftp.mkdir(path);
         } catch (SftpException e) {
-            if (e.id != ChannelSftp.SSH_FX_FAILURE || !exists(path)) {
+            // Servers of sftp v5 and later answer SSH_FX_FILE_ALREADY_EXISTS when another
+            // connection created the directory first.
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE || !exists(path)) {
                 throw new SftpException(e.id, "failed to create remote directory '" + path + "'." + e.getMessage(), e.getCause());
             }
         }
+        if (directoryCache != null) {
+            directoryCache.add(absolute(path));
+        }
+    }
+
+    /**
+     * The path resolved against the working directory, the key of the directory cache.
+     * JSch keeps the working directory locally, this sends no request.
+     */
+    private String absolute(String path) throws SftpException {
+        if (path.startsWith("/")) {
+            return path;
+        }
+        String pwd = channelSftp.pwd();
+        return pwd.endsWith("/") ? pwd + path : pwd + "/" + path;
+    }
+
+    /**
+     * Remove a remote file, or a directory with everything below it.
+     * @param path the remote path.
+     * @throws SftpException
+     */
+    public void removeTree(String path) throws SftpException {
+        if (directoryCache != null) {
+            directoryCache.invalidate(absolute(path));
+        }
+        if (!channelSftp.lstat(path).isDir()) {
+            channelSftp.rm(path);
+            return;
+        }
+        for (ChannelSftp.LsEntry entry : list(path)) {
+            String name = entry.getFilename();
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+            String child = path.endsWith("/") ? path + name : path + "/" + name;
+            if (entry.getAttrs().isDir()) {
+                removeTree(child);
+            } else {
+                channelSftp.rm(child);
+            }
+        }
+        channelSftp.rmdir(path);
     }
 
     /**
@@ -135,6 +637,43 @@ public class ChannelSftpWrapper {
         }
     }
 
+    /**
+     * Size of a remote file.
+     * @param path the remote path.
+     * @return file size in bytes.
+     * @throws SftpException
+     */
+    public long size(String path) throws SftpException {
+        return stat(path).getSize();
+    }
+
+    /**
+     * Attributes of a remote file.
+     * @param path the remote path.
+     * @throws SftpException
+     */
+    public SftpATTRS stat(String path) throws SftpException {
+        try {
+            return channelSftp.stat(path);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw new SftpException(e.id, "remote file '" + path + "' not exists.");
+            }
+            throw new SftpException(e.id, "cannot check status for path '" + path + "'." + e.getMessage(), e.getCause());
+        }
+    }
+
+    private SftpATTRS statIfExists(String path) throws SftpException {
+        try {
+            return channelSftp.stat(path);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw new SftpException(e.id, "cannot check status for path '" + path + "'." + e.getMessage(), e.getCause());
+        }
+    }
+
     /**
      * @see SftpTemplate#list(String)
      */
@@ -156,4 +695,74 @@ public class ChannelSftpWrapper {
             throw new SftpException(e.id, "failed to list files." + e.getMessage(), e.getCause());
         }
     }
+
+    /**
+     * Stream the entries of a directory to the consumer as the server sends them, without holding
+     * the listing in memory. The last path element may be a glob such as "*.csv".
+     * @see SftpTemplate#list(String, Predicate, int, Consumer)
+     * @param path     the remote path.
+     * @param filter   entries it rejects are skipped, null accepts all entries.
+     * @param maxCount reading stops once this many entries were accepted, negative for no limit.
+     * @param consumer receives the accepted entries.
+     * @return number of entries passed to the consumer.
+     * @throws SftpException
+     */
+    public int list(String path, Predicate<ChannelSftp.LsEntry> filter, int maxCount,
+                    Consumer<ChannelSftp.LsEntry> consumer) throws SftpException {
+        Assert.hasLength(path, "path must not be null");
+        Assert.notNull(consumer, "consumer must not be null");
+        int[] accepted = {0};
+        if (maxCount == 0) {
+            return 0;
+        }
+        try {
+            this.channelSftp.ls(path, entry -> {
+                if (filter == null || filter.test(entry)) {
+                    consumer.accept(entry);
+                    if (++accepted[0] == maxCount) {
+                        return ChannelSftp.LsEntrySelector.BREAK;
+                    }
+                }
+                return ChannelSftp.LsEntrySelector.CONTINUE;
+            });
+            return accepted[0];
+        } catch (SftpException e) {
+            throw new SftpException(e.id, "failed to list files." + e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * JSch reports an upload from a stream with an unknown size, the monitor sees the local file instead.
+     */
+    private static class LocalFileMonitor implements SftpProgressMonitor {
+        private final SftpProgressMonitor delegate;
+        private final String src;
+        private final long size;
+
+        LocalFileMonitor(SftpProgressMonitor delegate, String src, long size) {
+            this.delegate = delegate;
+            this.src = src;
+            this.size = size;
+        }
+
+        @Override
+        public void init(int op, String src, String dest, long max) {
+            delegate.init(op, this.src, dest, size);
+        }
+
+        @Override
+        public boolean count(long count) {
+            return delegate.count(count);
+        }
+
+        @Override
+        public void end() {
+            delegate.end();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RemoteWrite<T> {
+        T write(String target) throws SftpException;
+    }
 }
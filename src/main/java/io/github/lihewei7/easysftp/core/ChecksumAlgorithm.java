@@ -0,0 +1,94 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * @explain: Checksums computed while a file is transferred, as lower case hex.
+ * CRC32C needs Java 9 or later.
+ * @author: lihewei
+ */
+public enum ChecksumAlgorithm {
+    CRC32,
+    CRC32C,
+    MD5,
+    SHA_256;
+
+    private static final String CRC32C_CLASS = "java.util.zip.CRC32C";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    Digest newDigest() {
+        switch (this) {
+            case CRC32:
+                return new ChecksumDigest(new CRC32());
+            case CRC32C:
+                try {
+                    return new ChecksumDigest((Checksum) Class.forName(CRC32C_CLASS).getDeclaredConstructor().newInstance());
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("CRC32C requires Java 9 or later", e);
+                }
+            case MD5:
+                return new MessageDigestDigest("MD5");
+            default:
+                return new MessageDigestDigest("SHA-256");
+        }
+    }
+
+    /**
+     * Running checksum of the bytes seen so far.
+     */
+    abstract static class Digest {
+        abstract void update(byte[] b, int off, int len);
+
+        abstract String hex();
+    }
+
+    private static class ChecksumDigest extends Digest {
+        private final Checksum checksum;
+
+        ChecksumDigest(Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            checksum.update(b, off, len);
+        }
+
+        @Override
+        String hex() {
+            String hex = Long.toHexString(checksum.getValue());
+            return "00000000".substring(hex.length()) + hex;
+        }
+    }
+
+    private static class MessageDigestDigest extends Digest {
+        private final MessageDigest messageDigest;
+
+        MessageDigestDigest(String algorithm) {
+            try {
+                this.messageDigest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(algorithm + " is not available", e);
+            }
+        }
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            messageDigest.update(b, off, len);
+        }
+
+        @Override
+        String hex() {
+            byte[] digest = messageDigest.digest();
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.lihewei7.easysftp.core;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * @explain: Circuit breaker of one host. After failureThreshold consecutive failed borrows the circuit
+ * opens and borrows fail fast without touching the pool. When the open timeout is over a limited number
+ * of probe borrows is let through, a successful probe closes the circuit and a failed one opens it again
+ * with the timeout doubled, up to maxOpenTimeout.
+ * @author: lihewei
+ */
+public class CircuitBreaker {
+    private static final Log _logger = LogFactory.getLog(CircuitBreaker.class);
+
+    public enum State {
+        /**
+         * Borrows go through.
+         */
+        CLOSED,
+        /**
+         * Borrows fail fast until the open timeout is over.
+         */
+        OPEN,
+        /**
+         * Probe borrows are let through to find out if the host is back.
+         */
+        HALF_OPEN
+    }
+
+    private final String hostName;
+    private final int failureThreshold;
+    private final long openTimeout;
+    private final long maxOpenTimeout;
+    private final int halfOpenProbes;
+    private volatile State state = State.CLOSED;
+    private volatile int failures;
+    private int probes;
+    private long currentOpenTimeout;
+    private long openUntil;
+
+    /**
+     * @param failureThreshold consecutive failures that open the circuit, 0 or less never opens it.
+     */
+    public CircuitBreaker(String hostName, int failureThreshold, long openTimeout, long maxOpenTimeout, int halfOpenProbes) {
+        this.hostName = hostName;
+        this.failureThreshold = failureThreshold;
+        this.openTimeout = Math.max(1, openTimeout);
+        this.maxOpenTimeout = Math.max(this.openTimeout, maxOpenTimeout);
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.currentOpenTimeout = this.openTimeout;
+    }
+
+    /**
+     * Whether a borrow may go to the host. Every permitted borrow must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probes = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probes >= halfOpenProbes) {
+                    return false;
+                }
+                probes++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Whether a borrow would be let through now, without taking a probe permit.
+     */
+    public boolean isAvailable() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            return state == State.OPEN ? System.currentTimeMillis() >= openUntil : probes < halfOpenProbes;
+        }
+    }
+
+    public void onSuccess() {
+        if (state == State.CLOSED && failures == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                _logger.info("Easysftp: host '" + hostName(hostName) + "' is reachable again, circuit closed");
+            }
+            state = State.CLOSED;
+            failures = 0;
+            currentOpenTimeout = openTimeout;
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            currentOpenTimeout = Math.min(currentOpenTimeout * 2, maxOpenTimeout);
+            open();
+        } else if (state == State.CLOSED && ++failures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * The borrow neither proved nor disproved the host, e.g. the pool was exhausted.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probes > 0) {
+            probes--;
+        }
+    }
+
+    public State getState() {
+        State current = state;
+        if (current == State.OPEN) {
+            synchronized (this) {
+                if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+                    return State.HALF_OPEN;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Whether new connections to the host must not be opened, the circuit is open and not yet due for a probe.
+     */
+    boolean isOpen() {
+        return state == State.OPEN && getState() == State.OPEN;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + currentOpenTimeout;
+        _logger.warn("Easysftp: host '" + hostName(hostName) + "' is unreachable, circuit open for " + currentOpenTimeout + " ms");
+    }
+
+    private static String hostName(String hostName) {
+        return hostName == null ? "default" : hostName;
+    }
+}
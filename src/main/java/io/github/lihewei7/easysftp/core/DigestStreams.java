@@ -0,0 +1,73 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streams that feed every byte passing through them into a checksum,
+ * so a transfer is verified without reading the file a second time.
+ *
+ * @author: lihewei
+ */
+final class DigestStreams {
+
+    private DigestStreams() {
+    }
+
+    static class In extends FilterInputStream {
+        private final ChecksumAlgorithm.Digest digest;
+
+        In(InputStream in, ChecksumAlgorithm.Digest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                digest.update(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                digest.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            // Skipped bytes would be missing from the checksum.
+            return 0;
+        }
+    }
+
+    static class Out extends FilterOutputStream {
+        private final ChecksumAlgorithm.Digest digest;
+
+        Out(OutputStream out, ChecksumAlgorithm.Digest digest) {
+            super(out);
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            digest.update(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Recursive transfer of a directory tree. Directories and files are tasks of a work-stealing
+ * {@link ForkJoinPool}, every worker thread keeps one pooled connection for the whole tree,
+ * so N workers spread the files over N connections without a borrow per file.
+ * A failed file or directory is recorded in the {@link TransferResult} and the walk goes on.
+ * A sync lists every remote directory once and uploads only the files whose size or mtime differ.
+ * A list of files is uploaded the same way, each distinct remote directory is created once before
+ * its files are forked, so a file costs no directory round trip.
+ *
+ * @author: lihewei
+ */
+class DirectoryTransfer {
+    private final SftpTemplate sftpTemplate;
+    private final String hostName;
+    private final int parallelism;
+    private final TransferListener listener;
+    private TransferResult result = new TransferResult();
+    private final ThreadLocal<SftpClient> connections = new ThreadLocal<>();
+    private final Queue<SftpClient> borrowed = new ConcurrentLinkedQueue<>();
+
+    DirectoryTransfer(SftpTemplate sftpTemplate, String hostName, int parallelism, TransferListener listener) {
+        this.sftpTemplate = sftpTemplate;
+        this.hostName = hostName;
+        this.parallelism = Math.max(1, parallelism);
+        this.listener = listener == null ? TransferListener.NONE : listener;
+    }
+
+    TransferResult upload(File from, String to) {
+        run(new UploadDirectory(null, from, to, true));
+        return result;
+    }
+
+    TransferResult download(String from, File to) {
+        run(new DownloadDirectory(null, from, to));
+        return result;
+    }
+
+    SyncResult sync(File from, String to, boolean deleteOrphans) {
+        SyncResult syncResult = new SyncResult();
+        result = syncResult;
+        run(new SyncDirectory(null, from, to, true, deleteOrphans));
+        return syncResult;
+    }
+
+    /**
+     * @param files local source path to remote path.
+     * @return outcome of every upload, in the order of the map.
+     */
+    BatchResult uploadFiles(Map<String, String> files) {
+        UploadFiles root = new UploadFiles(files);
+        run(root);
+        BatchResult batchResult = new BatchResult();
+        root.items.forEach(batchResult::add);
+        return batchResult;
+    }
+
+    private void run(CountedCompleter<Void> root) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(root);
+        } finally {
+            pool.shutdown();
+            SftpClient sftpClient;
+            while ((sftpClient = borrowed.poll()) != null) {
+                sftpTemplate.release(hostName, sftpClient, false);
+            }
+        }
+    }
+
+    /**
+     * Run the action on the connection of the current worker thread.
+     */
+    private <T> T call(SftpCallback<T> action) throws SftpException {
+        SftpClient sftpClient = connections.get();
+        if (sftpClient == null) {
+            sftpClient = sftpTemplate.borrow(hostName);
+            connections.set(sftpClient);
+            borrowed.add(sftpClient);
+        }
+        try {
+            return action.doInSftp(sftpClient.getChannelSftp());
+        } catch (SftpException | RuntimeException e) {
+            if (!sftpClient.test()) {
+                connections.remove();
+                borrowed.remove(sftpClient);
+                sftpTemplate.release(hostName, sftpClient, true);
+            }
+            throw e;
+        }
+    }
+
+    private void transferred(String path, long bytes) {
+        result.transferred(bytes);
+        listener.onTransferred(path, bytes, result);
+    }
+
+    private void skipped(String path, long bytes) {
+        ((SyncResult) result).skipped(bytes);
+        listener.onSkipped(path, bytes, result);
+    }
+
+    private void failed(String path, Exception e) {
+        result.failed(path, e);
+        listener.onFailed(path, e, result);
+    }
+
+    private static String parent(String path) {
+        int slash = path.lastIndexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        return slash == 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static String child(String dir, String name) {
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+
+    private class UploadDirectory extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final File from;
+        private final String to;
+        private final boolean root;
+
+        UploadDirectory(CountedCompleter<?> parent, File from, String to, boolean root) {
+            super(parent);
+            this.from = from;
+            this.to = to;
+            this.root = root;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                // Each remote directory is created once, before any of its children is forked.
+                call(channelSftp -> {
+                    ChannelSftpWrapper wrapper = sftpTemplate.wrapper(hostName, channelSftp);
+                    if (root) {
+                        wrapper.mkdirs(to);
+                    } else {
+                        wrapper.mkdir(to);
+                    }
+                    return null;
+                });
+                File[] children = from.listFiles();
+                if (children == null) {
+                    throw new IOException("cannot list local directory '" + from + "'");
+                }
+                for (File child : children) {
+                    addToPendingCount(1);
+                    if (child.isDirectory()) {
+                        new UploadDirectory(this, child, child(to, child.getName()), false).fork();
+                    } else {
+                        new UploadFile(this, child, child(to, child.getName())).fork();
+                    }
+                }
+            } catch (Exception e) {
+                failed(to, e);
+            }
+            tryComplete();
+        }
+    }
+
+    private class UploadFile extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final File from;
+        private final String to;
+
+        UploadFile(CountedCompleter<?> parent, File from, String to) {
+            super(parent);
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                long size = from.length();
+                call(channelSftp -> {
+                    sftpTemplate.wrapper(hostName, channelSftp).put(from.getPath(), to);
+                    return null;
+                });
+                transferred(to, size);
+            } catch (Exception e) {
+                failed(to, e);
+            }
+            tryComplete();
+        }
+    }
+
+    private class SyncDirectory extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final File from;
+        private final String to;
+        private final boolean root;
+        private final boolean deleteOrphans;
+
+        SyncDirectory(CountedCompleter<?> parent, File from, String to, boolean root, boolean deleteOrphans) {
+            super(parent);
+            this.from = from;
+            this.to = to;
+            this.root = root;
+            this.deleteOrphans = deleteOrphans;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                // One listing gives the attributes of all remote children, a missing directory is created.
+                Map<String, SftpATTRS> remote = call(channelSftp -> {
+                    ChannelSftpWrapper wrapper = sftpTemplate.wrapper(hostName, channelSftp);
+                    Map<String, SftpATTRS> entries = new HashMap<>();
+                    try {
+                        for (ChannelSftp.LsEntry entry : wrapper.list(to)) {
+                            if (!".".equals(entry.getFilename()) && !"..".equals(entry.getFilename())) {
+                                entries.put(entry.getFilename(), entry.getAttrs());
+                            }
+                        }
+                    } catch (SftpException e) {
+                        if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                            throw e;
+                        }
+                        if (root) {
+                            wrapper.mkdirs(to);
+                        } else {
+                            wrapper.mkdir(to);
+                        }
+                    }
+                    return entries;
+                });
+                File[] children = from.listFiles();
+                if (children == null) {
+                    throw new IOException("cannot list local directory '" + from + "'");
+                }
+                Set<String> names = new HashSet<>();
+                for (File child : children) {
+                    String name = child.getName();
+                    String path = child(to, name);
+                    SftpATTRS attrs = remote.get(name);
+                    names.add(name);
+                    if (child.isDirectory()) {
+                        if (attrs != null && !attrs.isDir()) {
+                            failed(path, new IOException("remote path '" + path + "' is not a directory"));
+                            continue;
+                        }
+                        addToPendingCount(1);
+                        new SyncDirectory(this, child, path, false, deleteOrphans).fork();
+                    } else if (attrs != null && !attrs.isDir() && attrs.getSize() == child.length()
+                            && attrs.getMTime() == mtime(child)) {
+                        skipped(path, child.length());
+                    } else {
+                        addToPendingCount(1);
+                        new SyncFile(this, child, path).fork();
+                    }
+                }
+                if (deleteOrphans) {
+                    for (String name : remote.keySet()) {
+                        if (!names.contains(name)) {
+                            addToPendingCount(1);
+                            new DeleteOrphan(this, child(to, name)).fork();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                failed(to, e);
+            }
+            tryComplete();
+        }
+    }
+
+    private class SyncFile extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final File from;
+        private final String to;
+
+        SyncFile(CountedCompleter<?> parent, File from, String to) {
+            super(parent);
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                long size = from.length();
+                int mtime = mtime(from);
+                call(channelSftp -> {
+                    sftpTemplate.wrapper(hostName, channelSftp).put(from.getPath(), to);
+                    // The next sync compares against the local mtime, not the upload time.
+                    channelSftp.setMtime(to, mtime);
+                    return null;
+                });
+                transferred(to, size);
+            } catch (Exception e) {
+                failed(to, e);
+            }
+            tryComplete();
+        }
+    }
+
+    private class DeleteOrphan extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final String path;
+
+        DeleteOrphan(CountedCompleter<?> parent, String path) {
+            super(parent);
+            this.path = path;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                call(channelSftp -> {
+                    sftpTemplate.wrapper(hostName, channelSftp).removeTree(path);
+                    return null;
+                });
+                ((SyncResult) result).deleted();
+            } catch (Exception e) {
+                failed(path, e);
+            }
+            tryComplete();
+        }
+    }
+
+    /**
+     * Modification time in whole seconds, the resolution of sftp.
+     */
+    private static int mtime(File file) {
+        return (int) (file.lastModified() / 1000);
+    }
+
+    private class DownloadDirectory extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final String from;
+        private final File to;
+
+        DownloadDirectory(CountedCompleter<?> parent, String from, File to) {
+            super(parent);
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                Files.createDirectories(to.toPath());
+                ChannelSftp.LsEntry[] entries = call(channelSftp -> sftpTemplate.wrapper(hostName, channelSftp).list(from));
+                for (ChannelSftp.LsEntry entry : entries) {
+                    String name = entry.getFilename();
+                    if (".".equals(name) || "..".equals(name)) {
+                        continue;
+                    }
+                    addToPendingCount(1);
+                    if (entry.getAttrs().isDir()) {
+                        new DownloadDirectory(this, child(from, name), new File(to, name)).fork();
+                    } else {
+                        new DownloadFile(this, child(from, name), new File(to, name), entry.getAttrs().getSize()).fork();
+                    }
+                }
+            } catch (Exception e) {
+                failed(from, e);
+            }
+            tryComplete();
+        }
+    }
+
+    private class DownloadFile extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final String from;
+        private final File to;
+        private final long size;
+
+        DownloadFile(CountedCompleter<?> parent, String from, File to, long size) {
+            super(parent);
+            this.from = from;
+            this.to = to;
+            this.size = size;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                call(channelSftp -> {
+                    sftpTemplate.wrapper(hostName, channelSftp).download(from, to.getPath());
+                    return null;
+                });
+                transferred(from, size);
+            } catch (Exception e) {
+                failed(from, e);
+            }
+            tryComplete();
+        }
+    }
+
+    /**
+     * Forks one task per distinct remote directory of the files.
+     */
+    private class UploadFiles extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final List<String> froms;
+        private final List<String> tos;
+        // Every index is set by the one task of its file, and read after the pool is done.
+        private final List<BatchResult.Item<Void>> items;
+
+        UploadFiles(Map<String, String> files) {
+            this.froms = new ArrayList<>(files.keySet());
+            this.tos = new ArrayList<>(files.values());
+            this.items = new ArrayList<>(Collections.nCopies(files.size(), null));
+        }
+
+        @Override
+        public void compute() {
+            Map<String, List<Integer>> directories = new LinkedHashMap<>();
+            for (int i = 0; i < tos.size(); i++) {
+                directories.computeIfAbsent(parent(tos.get(i)), dir -> new ArrayList<>()).add(i);
+            }
+            directories.forEach((dir, indexes) -> {
+                addToPendingCount(1);
+                new UploadFilesOfDirectory(this, dir, indexes).fork();
+            });
+            tryComplete();
+        }
+
+        private class UploadFilesOfDirectory extends CountedCompleter<Void> {
+            private static final long serialVersionUID = 1L;
+            private final String dir;
+            private final List<Integer> indexes;
+
+            UploadFilesOfDirectory(CountedCompleter<?> parent, String dir, List<Integer> indexes) {
+                super(parent);
+                this.dir = dir;
+                this.indexes = indexes;
+            }
+
+            @Override
+            public void compute() {
+                try {
+                    if (dir != null) {
+                        call(channelSftp -> {
+                            sftpTemplate.wrapper(hostName, channelSftp).mkdirs(dir);
+                            return null;
+                        });
+                    }
+                    for (Integer index : indexes) {
+                        addToPendingCount(1);
+                        new UploadListedFile(this, index).fork();
+                    }
+                } catch (Exception e) {
+                    // None of the files can be written without their directory.
+                    for (Integer index : indexes) {
+                        items.set(index, new BatchResult.Item<>("upload", tos.get(index), null, e));
+                    }
+                }
+                tryComplete();
+            }
+        }
+
+        private class UploadListedFile extends CountedCompleter<Void> {
+            private static final long serialVersionUID = 1L;
+            private final int index;
+
+            UploadListedFile(CountedCompleter<?> parent, int index) {
+                super(parent);
+                this.index = index;
+            }
+
+            @Override
+            public void compute() {
+                String from = froms.get(index);
+                String to = tos.get(index);
+                try {
+                    File local = new File(from);
+                    if (!local.exists()) {
+                        throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "local file '" + from + "' not exists.", new FileNotFoundException(from));
+                    }
+                    long start = System.nanoTime();
+                    call(channelSftp -> {
+                        sftpTemplate.wrapper(hostName, channelSftp).put(from, to);
+                        return null;
+                    });
+                    sftpTemplate.transferred(hostName, "upload", local.length(), start);
+                    items.set(index, new BatchResult.Item<>("upload", to, null, null));
+                } catch (Exception e) {
+                    items.set(index, new BatchResult.Item<>("upload", to, null, e));
+                }
+                tryComplete();
+            }
+        }
+    }
+}
@@ -57,6 +57,8 @@ public class HostsManage {
 
     /**
      * Provides the user with a way to set up the host and stay connected.
+     * Only the host is kept, every call still borrows a connection, use
+     * {@link SftpTemplate#openSession(String)} to keep one connection as well.
      * @param hostName host key.
      * @param autoClose Set true to preserve the connection.
      */
@@ -94,6 +96,24 @@ public class HostsManage {
         return hosts.hostName;
     }
 
+    /**
+     * Host bound to the current thread, null if none.
+     */
+    static Hosts current() {
+        return THREADLOCAL.get();
+    }
+
+    /**
+     * Bind the host again that was bound before a session, unless a template call has used it up.
+     */
+    static void restore(Hosts hosts) {
+        if (hosts == null || hosts.autoClose) {
+            THREADLOCAL.remove();
+        } else {
+            THREADLOCAL.set(hosts);
+        }
+    }
+
     static class Hosts {
         private String hostName;
         private Boolean autoClose;
@@ -102,5 +122,9 @@ public class HostsManage {
             this.hostName = hostName;
             this.autoClose = autoClose;
         }
+
+        String getHostName() {
+            return hostName;
+        }
     }
 }
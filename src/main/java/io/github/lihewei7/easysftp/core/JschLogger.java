@@ -4,37 +4,52 @@ import com.jcraft.jsch.Logger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class JschLogger implements Logger {
     private static final Log log = LogFactory.getLog("com.jcraft.jsch");
+    /**
+     * Key exchange messages of the handshake running in the current thread, see {@link #startCapture()}.
+     */
+    private static final ThreadLocal<List<String>> CAPTURE = new ThreadLocal<>();
     private final boolean enabled;
 
     public JschLogger(boolean enabled) {
         this.enabled = enabled;
     }
 
+    /**
+     * Collect the "kex:" messages JSch logs while the current thread connects a session,
+     * they carry the algorithms offered by the server and the negotiated ones.
+     */
+    static void startCapture() {
+        CAPTURE.set(new ArrayList<>());
+    }
+
+    static List<String> stopCapture() {
+        List<String> messages = CAPTURE.get();
+        CAPTURE.remove();
+        return messages;
+    }
+
     @Override
     public boolean isEnabled(int level) {
-        if (!enabled) {
-            return false;
-        }
-        switch (level) {
-            case Logger.INFO:
-                return log.isInfoEnabled();
-            case Logger.WARN:
-                return log.isWarnEnabled();
-            case Logger.DEBUG:
-                return log.isDebugEnabled();
-            case Logger.ERROR:
-                return log.isErrorEnabled();
-            case Logger.FATAL:
-                return log.isFatalEnabled();
-            default:
-                return false;
+        if (level == Logger.INFO && CAPTURE.get() != null) {
+            return true;
         }
+        return isForwarded(level);
     }
 
     @Override
     public void log(int level, String message) {
+        List<String> capture = CAPTURE.get();
+        if (capture != null && message != null && message.startsWith("kex: ")) {
+            capture.add(message);
+        }
+        if (!isForwarded(level)) {
+            return;
+        }
         switch (level) {
             case Logger.INFO:
                 log.info(message);
@@ -56,4 +71,24 @@ public class JschLogger implements Logger {
         }
     }
 
+    private boolean isForwarded(int level) {
+        if (!enabled) {
+            return false;
+        }
+        switch (level) {
+            case Logger.INFO:
+                return log.isInfoEnabled();
+            case Logger.WARN:
+                return log.isWarnEnabled();
+            case Logger.DEBUG:
+                return log.isDebugEnabled();
+            case Logger.ERROR:
+                return log.isErrorEnabled();
+            case Logger.FATAL:
+                return log.isFatalEnabled();
+            default:
+                return false;
+        }
+    }
+
 }
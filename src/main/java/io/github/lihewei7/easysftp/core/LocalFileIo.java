@@ -0,0 +1,379 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Local side of file transfers over {@link FileChannel}. Bytes are staged in direct buffers that are
+ * pooled and reused across transfers, so a steady stream of transfers allocates no copy buffers and
+ * the kernel reads and writes straight from native memory. Files of at least mmapThreshold bytes are
+ * memory mapped window by window instead, each window is unmapped as soon as it is used up, since a live
+ * mapping holds address space until it is collected and keeps the file from being truncated on Windows.
+ * A download destination can be preallocated to the remote size.
+ *
+ * @author: lihewei
+ */
+class LocalFileIo {
+    /**
+     * Size of one mapped region, a file larger than this is mapped window by window.
+     */
+    private static final long MAP_WINDOW = 64L * 1024L * 1024L;
+    /**
+     * Releases a mapping right away, null if the JVM gives no access to the cleaner of mapped buffers.
+     */
+    private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+    private final int bufferSize;
+    private final long mmapThreshold;
+    private final boolean preallocate;
+    private final int maxPooledBuffers;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param mmapThreshold files at least this large are memory mapped, 0 or less never.
+     * @param maxPooledBuffers direct buffers kept for reuse, about the number of concurrent transfers.
+     */
+    LocalFileIo(int bufferSize, long mmapThreshold, boolean preallocate, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.mmapThreshold = mmapThreshold;
+        this.preallocate = preallocate;
+        this.maxPooledBuffers = Math.max(1, maxPooledBuffers);
+    }
+
+    /**
+     * Whether the size of the remote file is needed before a download is written.
+     */
+    boolean needsSize() {
+        return preallocate || mmapThreshold > 0;
+    }
+
+    /**
+     * Open the destination of a download, truncated to the bytes written when it is closed.
+     * @param size expected size, negative if unknown.
+     */
+    OutputStream openOutput(File file, long size) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            if (size > 0 && (preallocate || mmap(size))) {
+                // Extends the file once up front instead of at every write, Java has no fallocate.
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            return mmap(size) ? new MappedOutput(channel, size) : new ChannelOutput(channel, acquire());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open the source of an upload.
+     */
+    InputStream openInput(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            return mmap(size) ? new MappedInput(channel, size) : new ChannelInput(channel, acquire());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private boolean mmap(long size) {
+        return mmapThreshold > 0 && size >= mmapThreshold;
+    }
+
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8 has no invokeCleaner.
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object bufferCleaner = invoke(cleaner, buffer);
+                if (bufferCleaner != null) {
+                    invoke(clean, bufferCleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector.
+            return null;
+        }
+    }
+
+    /**
+     * Unmap a window that is no longer used, it must not be accessed afterwards.
+     */
+    private static void unmap(MappedByteBuffer window) {
+        if (window != null && UNMAPPER != null) {
+            UNMAPPER.accept(window);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    private void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= maxPooledBuffers) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private class ChannelOutput extends OutputStream {
+        private final FileChannel channel;
+        private ByteBuffer buffer;
+
+        ChannelOutput(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                drain();
+                channel.truncate(channel.position());
+            } finally {
+                release(buffer);
+                buffer = null;
+                channel.close();
+            }
+        }
+    }
+
+    private class ChannelInput extends InputStream {
+        private final FileChannel channel;
+        private ByteBuffer buffer;
+        private boolean eof;
+
+        ChannelInput(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (!buffer.hasRemaining() && !eof) {
+                buffer.clear();
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+            }
+            return buffer.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            release(buffer);
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * Maps the next window whenever the current one is used up.
+     */
+    private static class MappedOutput extends OutputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer window;
+        private boolean closed;
+
+        MappedOutput(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (window == null || !window.hasRemaining()) {
+                    map();
+                }
+                int n = Math.min(len, window.remaining());
+                window.put(b, off, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void map() throws IOException {
+            long remaining = size - position;
+            // If the remote file grew after its size was read, mapping past the end grows the local file.
+            long length = remaining > 0 ? Math.min(MAP_WINDOW, remaining) : MAP_WINDOW;
+            MappedByteBuffer used = window;
+            window = null;
+            unmap(used);
+            window = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                MappedByteBuffer used = window;
+                window = null;
+                unmap(used);
+                // Only an aborted or shrunk download is left longer than what was written.
+                if (channel.size() != position) {
+                    channel.truncate(position);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static class MappedInput extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer window;
+
+        MappedInput(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (window == null || !window.hasRemaining()) {
+                if (position >= size) {
+                    return -1;
+                }
+                MappedByteBuffer used = window;
+                window = null;
+                unmap(used);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+            }
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            MappedByteBuffer used = window;
+            window = null;
+            unmap(used);
+            channel.close();
+        }
+    }
+}
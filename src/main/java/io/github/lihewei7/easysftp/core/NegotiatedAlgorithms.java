@@ -0,0 +1,111 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.HostKey;
+import com.jcraft.jsch.Session;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @explain: Algorithms agreed with the server during the last handshake of a host, and how long it took.
+ * JSch has no API for them, they are read from the key exchange messages it logs, so they are only
+ * known when {@link JschLogger} is the JSch logger (the auto-configuration installs it), otherwise null.
+ * @author: lihewei
+ */
+public class NegotiatedAlgorithms {
+    private static final String SERVER_PROPOSAL = "kex: server: ";
+    private static final String CLIENT_PROPOSAL = "kex: client: ";
+    private static final String SERVER_TO_CLIENT = "kex: server->client ";
+    private static final String CLIENT_TO_SERVER = "kex: client->server ";
+
+    private String kex;
+    private String hostKey;
+    private String[] serverToClient = new String[3];
+    private String[] clientToServer = new String[3];
+    private final long handshakeMillis;
+
+    private NegotiatedAlgorithms(long handshakeMillis) {
+        this.handshakeMillis = handshakeMillis;
+    }
+
+    static NegotiatedAlgorithms of(List<String> messages, Session session, long handshakeMillis) {
+        NegotiatedAlgorithms algorithms = new NegotiatedAlgorithms(handshakeMillis);
+        HostKey hostKey = session.getHostKey();
+        algorithms.hostKey = hostKey == null ? null : hostKey.getType();
+        if (messages == null) {
+            return algorithms;
+        }
+        // The first proposal line of each side lists the kex algorithms, the client's first one
+        // that the server also offers is the one used.
+        List<String> serverKex = null;
+        String[] clientKex = null;
+        for (String message : messages) {
+            if (serverKex == null && message.startsWith(SERVER_PROPOSAL)) {
+                serverKex = Arrays.asList(message.substring(SERVER_PROPOSAL.length()).split(","));
+            } else if (clientKex == null && message.startsWith(CLIENT_PROPOSAL)) {
+                clientKex = message.substring(CLIENT_PROPOSAL.length()).split(",");
+            } else if (message.startsWith(SERVER_TO_CLIENT)) {
+                algorithms.serverToClient = Arrays.copyOf(message.substring(SERVER_TO_CLIENT.length()).split(" "), 3);
+            } else if (message.startsWith(CLIENT_TO_SERVER)) {
+                algorithms.clientToServer = Arrays.copyOf(message.substring(CLIENT_TO_SERVER.length()).split(" "), 3);
+            }
+        }
+        if (serverKex != null && clientKex != null) {
+            for (String candidate : clientKex) {
+                if (serverKex.contains(candidate)) {
+                    algorithms.kex = candidate;
+                    break;
+                }
+            }
+        }
+        return algorithms;
+    }
+
+    public String getKex() {
+        return kex;
+    }
+
+    public String getHostKey() {
+        return hostKey;
+    }
+
+    public String getCipherServerToClient() {
+        return serverToClient[0];
+    }
+
+    public String getCipherClientToServer() {
+        return clientToServer[0];
+    }
+
+    public String getMacServerToClient() {
+        return serverToClient[1];
+    }
+
+    public String getMacClientToServer() {
+        return clientToServer[1];
+    }
+
+    public String getCompressionServerToClient() {
+        return serverToClient[2];
+    }
+
+    public String getCompressionClientToServer() {
+        return clientToServer[2];
+    }
+
+    /**
+     * Time from opening the socket to the end of authentication.
+     */
+    public long getHandshakeMillis() {
+        return handshakeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "kex=" + kex + ", hostKey=" + hostKey
+                + ", cipher=" + getCipherServerToClient() + "/" + getCipherClientToServer()
+                + ", mac=" + getMacServerToClient() + "/" + getMacClientToServer()
+                + ", compression=" + getCompressionServerToClient() + "/" + getCompressionClientToServer()
+                + ", handshake=" + handshakeMillis + "ms";
+    }
+}
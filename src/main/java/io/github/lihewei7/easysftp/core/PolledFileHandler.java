@@ -0,0 +1,21 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.SftpATTRS;
+
+/**
+ * Receives the files found by {@link SftpPoller}, called from its handler threads.
+ *
+ * @author: lihewei
+ */
+@FunctionalInterface
+public interface PolledFileHandler {
+
+    /**
+     * A new or changed file whose size and mtime are stable. A handler that throws gets the
+     * file again at the next poll, one that returns only gets it again after it changes.
+     * @param hostName host of the watched directory, null for a single host.
+     * @param path     remote path of the file.
+     * @param attrs    attributes of the file when it was delivered.
+     */
+    void handle(String hostName, String path, SftpATTRS attrs) throws Exception;
+}
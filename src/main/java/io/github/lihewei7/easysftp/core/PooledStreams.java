@@ -0,0 +1,110 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streams over a borrowed sftp connection, the connection goes back to the pool
+ * exactly once, when the stream is closed, together with the number of bytes transferred.
+ *
+ * @author: lihewei
+ */
+final class PooledStreams {
+
+    private PooledStreams() {
+    }
+
+    @FunctionalInterface
+    interface Release {
+        /**
+         * @param broken true if the stream failed and the connection must not be reused.
+         * @param bytes  bytes read from or written to the remote file.
+         */
+        void release(boolean broken, long bytes);
+    }
+
+    static class In extends FilterInputStream {
+        private final Release release;
+        private long bytes;
+        private boolean closed;
+
+        In(InputStream in, Release release) {
+            super(in);
+            this.release = release;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean broken = true;
+            try {
+                super.close();
+                broken = false;
+            } finally {
+                release.release(broken, bytes);
+            }
+        }
+    }
+
+    static class Out extends FilterOutputStream {
+        private final Release release;
+        private long bytes;
+        private boolean closed;
+
+        Out(OutputStream out, Release release) {
+            super(out);
+            this.release = release;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean broken = true;
+            try {
+                out.close();
+                broken = false;
+            } finally {
+                release.release(broken, bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @explain: Remote directories of one host known to exist, shared by all its pooled connections.
+ * Entries expire after a time to live and the least recently used ones are evicted first.
+ * Only absolute paths are cached, normalized so that one directory has one entry; relative paths
+ * depend on the working directory of a connection and are never found.
+ * @author: lihewei
+ */
+public class RemoteDirectoryCache {
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Long> directories;
+
+    public RemoteDirectoryCache(int maxSize, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.directories = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Whether the directory was seen within the time to live.
+     */
+    public synchronized boolean contains(String dir) {
+        String path = normalize(dir);
+        Long expiresAt = path == null ? null : directories.get(path);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            directories.remove(path);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void add(String dir) {
+        String path = normalize(dir);
+        if (path != null) {
+            directories.put(path, System.currentTimeMillis() + ttlMillis);
+        }
+    }
+
+    /**
+     * Forget the directory and everything below it.
+     */
+    public synchronized void invalidate(String dir) {
+        String path = normalize(dir);
+        if (path == null) {
+            return;
+        }
+        String prefix = path.endsWith("/") ? path : path + "/";
+        Iterator<String> iterator = directories.keySet().iterator();
+        while (iterator.hasNext()) {
+            String cached = iterator.next();
+            if (cached.equals(path) || cached.startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget a directory that turned out to be missing, with everything below it and all its ancestors,
+     * since any of them may have been removed with it.
+     */
+    public synchronized void invalidateMissing(String dir) {
+        String path = normalize(dir);
+        if (path == null) {
+            return;
+        }
+        invalidate(path);
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            directories.remove(path.substring(0, slash));
+        }
+        directories.remove("/");
+    }
+
+    public synchronized void clear() {
+        directories.clear();
+    }
+
+    /**
+     * Absolute path without empty, "." and ".." segments, null for a relative path.
+     */
+    private static String normalize(String dir) {
+        if (dir == null || !dir.startsWith("/")) {
+            return null;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : dir.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return segments.isEmpty() ? "/" : "/" + String.join("/", segments);
+    }
+}
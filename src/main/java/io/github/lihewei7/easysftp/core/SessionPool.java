@@ -0,0 +1,275 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.UserInfo;
+import io.github.lihewei7.easysftp.config.SftpProperties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @explain: Authenticated SSH sessions of one host, shared by several sftp channels.
+ * A session is opened when every live session already carries channelsPerSession channels,
+ * and is closed as soon as its last channel is released.
+ * @author: lihewei
+ */
+public class SessionPool {
+    private static final Log _logger = LogFactory.getLog(SessionPool.class);
+    private static final String DEFAULT_KEX = "diffie-hellman-group1-sha1,"
+            + "diffie-hellman-group-exchange-sha1,"
+            + "diffie-hellman-group-exchange-sha256";
+    private static final String JZLIB = "com.jcraft.jzlib.ZStream";
+
+    private final SftpProperties sftpProperties;
+    private final int channelsPerSession;
+    private final List<SharedSession> sessions = new ArrayList<>();
+    private JSch jsch;
+    private volatile NegotiatedAlgorithms negotiatedAlgorithms;
+    private final TransferTuning tuning;
+
+    public SessionPool(SftpProperties sftpProperties, int channelsPerSession) {
+        this.sftpProperties = sftpProperties;
+        this.channelsPerSession = Math.max(1, channelsPerSession);
+        this.tuning = new TransferTuning(sftpProperties);
+    }
+
+    /**
+     * Transfer settings of this host, shared by all its channels.
+     */
+    TransferTuning getTuning() {
+        return tuning;
+    }
+
+    /**
+     * Lease a channel slot on a connected session, opening a new session if all are full.
+     * A session being opened already counts with its slots, callers that take one of them
+     * wait for its handshake instead of opening a session of their own.
+     */
+    SharedSession acquire() throws JSchException {
+        SharedSession sharedSession = null;
+        synchronized (this) {
+            for (SharedSession candidate : sessions) {
+                if (candidate.channels < channelsPerSession && (candidate.isPending() || candidate.session.isConnected())) {
+                    candidate.channels++;
+                    sharedSession = candidate;
+                    break;
+                }
+            }
+            if (sharedSession != null) {
+                return awaitConnected(sharedSession);
+            }
+            sharedSession = new SharedSession();
+            sessions.add(sharedSession);
+        }
+        // The handshake happens outside the lock so that hosts warm up concurrently.
+        Session session;
+        try {
+            session = openSession();
+        } catch (JSchException | RuntimeException e) {
+            synchronized (this) {
+                sessions.remove(sharedSession);
+                sharedSession.failure = e;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            sharedSession.session = session;
+            notifyAll();
+        }
+        return sharedSession;
+    }
+
+    /**
+     * Wait for the handshake of a session whose slot was taken while it was being opened.
+     */
+    private SharedSession awaitConnected(SharedSession sharedSession) throws JSchException {
+        try {
+            while (sharedSession.isPending() && sharedSession.failure == null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            sharedSession.channels--;
+            Thread.currentThread().interrupt();
+            throw new JSchException("interrupted while waiting for a session of " + sftpProperties.getHost(), e);
+        }
+        if (sharedSession.failure != null) {
+            throw new JSchException("failed to open a session of " + sftpProperties.getHost(), sharedSession.failure);
+        }
+        return sharedSession;
+    }
+
+    /**
+     * Give back a channel slot, the session is disconnected when it no longer carries channels.
+     */
+    void release(SharedSession sharedSession) {
+        boolean idle;
+        synchronized (this) {
+            idle = --sharedSession.channels <= 0;
+            if (idle) {
+                sessions.remove(sharedSession);
+            }
+        }
+        if (idle) {
+            sharedSession.session.disconnect();
+        }
+    }
+
+    /**
+     * Algorithms of the last handshake with this host, null before the first one.
+     */
+    public NegotiatedAlgorithms getNegotiatedAlgorithms() {
+        return negotiatedAlgorithms;
+    }
+
+    /**
+     * Number of SSH sessions currently opened or being opened for this host.
+     */
+    public synchronized int getNumSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * The JSch instance of the host, created on the first handshake. The private key file is read,
+     * parsed and decrypted once here, every later session reuses the decoded identity.
+     */
+    private synchronized JSch jsch() throws JSchException {
+        if (jsch == null) {
+            JSch created = new JSch();
+            if (sftpProperties.isCheckToHostKey()) {
+                String passphrase = sftpProperties.getPassword();
+                if (passphrase == null || passphrase.isEmpty()) {
+                    created.addIdentity(sftpProperties.getKeyPath());
+                } else {
+                    created.addIdentity(sftpProperties.getKeyPath(), passphrase.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            jsch = created;
+        }
+        return jsch;
+    }
+
+    private Session openSession() throws JSchException {
+        Session session = jsch().getSession(sftpProperties.getUsername(), sftpProperties.getHost(), sftpProperties.getPort());
+        try {
+            if (sftpProperties.isCheckToHostKey()) {
+                session.setConfig("PreferredAuthentications", "publickey");
+                session.setConfig("userauth.gssapi-with-mic", "no");
+                session.setConfig("StrictHostKeyChecking", "ask");
+                session.setUserInfo(new SftpAuthKeyUserInfo(sftpProperties.getPassword()));
+            } else {
+                session.setConfig("PreferredAuthentications", "password");
+                session.setConfig("StrictHostKeyChecking", "no");
+                session.setPassword(sftpProperties.getPassword());
+            }
+            session.setConfig("UseDNS", "no");
+            session.setConfig("kex", StringUtils.hasText(sftpProperties.getKex()) ? sftpProperties.getKex() : DEFAULT_KEX);
+            setAlgorithms(session, "cipher", sftpProperties.getCiphers());
+            setAlgorithms(session, "mac", sftpProperties.getMacs());
+            if (StringUtils.hasText(sftpProperties.getCompression()) && !ClassUtils.isPresent(JZLIB, null)) {
+                _logger.warn("Easysftp: compression of " + sftpProperties.getHost() + " needs com.jcraft:jzlib on the classpath, it is disabled");
+            } else {
+                setAlgorithms(session, "compression", sftpProperties.getCompression());
+            }
+            long start = System.currentTimeMillis();
+            JschLogger.startCapture();
+            try {
+                session.connect(sftpProperties.getConnectTimeout());
+            } finally {
+                List<String> messages = JschLogger.stopCapture();
+                if (session.isConnected()) {
+                    negotiated(NegotiatedAlgorithms.of(messages, session, System.currentTimeMillis() - start));
+                }
+            }
+            return session;
+        } catch (JSchException e) {
+            session.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Set the preference list of both directions, JSch keeps its defaults for an empty list.
+     */
+    private static void setAlgorithms(Session session, String type, String algorithms) {
+        if (StringUtils.hasText(algorithms)) {
+            String list = algorithms.replace(" ", "");
+            session.setConfig(type + ".s2c", list);
+            session.setConfig(type + ".c2s", list);
+        }
+    }
+
+    private void negotiated(NegotiatedAlgorithms algorithms) {
+        NegotiatedAlgorithms previous = negotiatedAlgorithms;
+        negotiatedAlgorithms = algorithms;
+        if (previous == null) {
+            _logger.info("Easysftp: connected to " + sftpProperties.getHost() + ":" + sftpProperties.getPort() + ", " + algorithms);
+        } else if (_logger.isDebugEnabled()) {
+            _logger.debug("Easysftp: connected to " + sftpProperties.getHost() + ":" + sftpProperties.getPort() + ", " + algorithms);
+        }
+    }
+
+    static class SharedSession {
+        private volatile Session session;
+        private Exception failure;
+        private int channels = 1;
+
+        /**
+         * Still in its handshake, the session is set once it is connected.
+         */
+        boolean isPending() {
+            return session == null;
+        }
+
+        Session getSession() {
+            return session;
+        }
+    }
+
+    private static class SftpAuthKeyUserInfo implements UserInfo {
+        /**
+         * ssh private key passphrase
+         */
+        private final String passphrase;
+
+        public SftpAuthKeyUserInfo(String passphrase) {
+            this.passphrase = passphrase;
+        }
+
+        @Override
+        public String getPassphrase() {
+            return passphrase;
+        }
+
+        @Override
+        public String getPassword() {
+            return null;
+        }
+
+        @Override
+        public boolean promptPassphrase(String s) {
+            return true;
+        }
+
+        @Override
+        public boolean promptPassword(String s) {
+            return false;
+        }
+
+        @Override
+        public boolean promptYesNo(String s) {
+            return true;
+        }
+
+        @Override
+        public void showMessage(String message) {
+        }
+    }
+}
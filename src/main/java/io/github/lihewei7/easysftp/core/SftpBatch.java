@@ -0,0 +1,119 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * @explain: Operations of {@link SftpTemplate#batch} that share one borrowed connection.
+ * The connection is validated once when it is borrowed, and returned when the batch ends.
+ * A failed operation is recorded in the {@link BatchResult}, if it broke the connection
+ * the next operation borrows a new one.
+ * @author: lihewei
+ */
+public class SftpBatch {
+    private final SftpTemplate sftpTemplate;
+    private final String hostName;
+    private final BatchResult result = new BatchResult();
+    private SftpClient sftpClient;
+
+    SftpBatch(SftpTemplate sftpTemplate, String hostName) {
+        this.sftpTemplate = sftpTemplate;
+        this.hostName = hostName;
+    }
+
+    /**
+     * @see SftpTemplate#upload(String, String)
+     */
+    public BatchResult.Item<Void> upload(String from, String to) {
+        return run("upload", to, wrapper -> {
+            long start = System.nanoTime();
+            wrapper.upload(from, to);
+            sftpTemplate.transferred(hostName, "upload", new File(from).length(), start);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#upload(InputStream, String)
+     */
+    public BatchResult.Item<Void> upload(InputStream from, String to) {
+        return run("upload", to, wrapper -> {
+            wrapper.upload(from, to);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#download(String, String)
+     */
+    public BatchResult.Item<Void> download(String from, String to) {
+        return run("download", from, wrapper -> {
+            long start = System.nanoTime();
+            wrapper.download(from, to);
+            sftpTemplate.transferred(hostName, "download", new File(to).length(), start);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#exists(String)
+     */
+    public BatchResult.Item<Boolean> exists(String path) {
+        return run("exists", path, wrapper -> wrapper.exists(path));
+    }
+
+    /**
+     * Create the remote directory and its missing parents.
+     */
+    public BatchResult.Item<Void> mkdirs(String path) {
+        return run("mkdirs", path, wrapper -> {
+            wrapper.mkdirs(path);
+            return null;
+        });
+    }
+
+    /**
+     * @see SftpTemplate#list(String)
+     */
+    public BatchResult.Item<ChannelSftp.LsEntry[]> list(String path) {
+        return run("list", path, wrapper -> wrapper.list(path));
+    }
+
+    BatchResult getResult() {
+        return result;
+    }
+
+    /**
+     * Return the connection of the batch to the pool.
+     */
+    void close() {
+        if (sftpClient != null) {
+            sftpTemplate.release(hostName, sftpClient, false);
+            sftpClient = null;
+        }
+    }
+
+    private <T> BatchResult.Item<T> run(String operation, String path, Operation<T> action) {
+        try {
+            if (sftpClient == null) {
+                sftpClient = sftpTemplate.borrow(hostName);
+            }
+            T value = action.run(sftpTemplate.wrapper(hostName, sftpClient.getChannelSftp()));
+            return result.add(new BatchResult.Item<>(operation, path, value, null));
+        } catch (SftpException | RuntimeException e) {
+            if (sftpClient != null && !sftpClient.test()) {
+                sftpTemplate.release(hostName, sftpClient, true);
+                sftpClient = null;
+            }
+            return result.add(new BatchResult.Item<>(operation, path, null, e));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run(ChannelSftpWrapper wrapper) throws SftpException;
+    }
+}
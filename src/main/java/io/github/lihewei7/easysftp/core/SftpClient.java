@@ -1,6 +1,7 @@
 package io.github.lihewei7.easysftp.core;
 
-import com.jcraft.jsch.*;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
 import io.github.lihewei7.easysftp.config.SftpProperties;
 
 /**
@@ -10,49 +11,78 @@ import io.github.lihewei7.easysftp.config.SftpProperties;
 public class SftpClient {
 
     private final ChannelSftp channelSftp;
-    private final Session session;
+    private final SessionPool sessionPool;
+    private final SessionPool.SharedSession sharedSession;
     private final String originalDir;
+    private final String hostKey;
 
     public ChannelSftp getChannelSftp() {
         return channelSftp;
     }
 
     public SftpClient(SftpProperties sftpProperties) {
+        this(new SessionPool(sftpProperties, 1));
+    }
+
+    /**
+     * Open an sftp channel over a session leased from the given host session pool.
+     */
+    public SftpClient(SessionPool sessionPool) {
+        this(sessionPool, null);
+    }
+
+    SftpClient(SessionPool sessionPool, String hostKey) {
+        this.sessionPool = sessionPool;
+        this.hostKey = hostKey;
+        SessionPool.SharedSession leased = null;
+        ChannelSftp channel = null;
         try {
-            JSch jsch = new JSch();
-            session = jsch.getSession(sftpProperties.getUsername(), sftpProperties.getHost(), sftpProperties.getPort());
-            if (sftpProperties.isCheckToHostKey()) {
-                session.setConfig("PreferredAuthentications", "publickey");
-                session.setConfig("userauth.gssapi-with-mic", "no");
-                session.setConfig("StrictHostKeyChecking", "ask");
-                session.setUserInfo(new SftpAuthKeyUserInfo(sftpProperties.getPassword()));
-                jsch.addIdentity(sftpProperties.getKeyPath());
-            } else {
-                session.setConfig("PreferredAuthentications", "password");
-                session.setConfig("StrictHostKeyChecking", "no");
-                session.setPassword(sftpProperties.getPassword());
+            leased = sessionPool.acquire();
+            TransferTuning tuning = sessionPool.getTuning();
+            channel = (ChannelSftp) leased.getSession().openChannel("sftp");
+            tuning.openWindow(channel);
+            channel.connect();
+            originalDir = channel.pwd();
+            tuning.apply(channel);
+            if (tuning.isAutoTune()) {
+                // One request round trip, a sample of the RTT for the tuner.
+                long start = System.nanoTime();
+                channel.stat(originalDir);
+                tuning.recordRtt(System.nanoTime() - start);
             }
-            session.setConfig("UseDNS", "no");
-            session.setConfig("kex", "diffie-hellman-group1-sha1,"
-                    + "diffie-hellman-group-exchange-sha1,"
-                    + "diffie-hellman-group-exchange-sha256");
-            session.connect(sftpProperties.getConnectTimeout());
-            channelSftp = (ChannelSftp) session.openChannel("sftp");
-            channelSftp.connect();
-            originalDir = channelSftp.pwd();
         } catch (Exception e) {
-            disconnect();
+            if (channel != null) {
+                channel.disconnect();
+            }
+            if (leased != null) {
+                sessionPool.release(leased);
+            }
             throw new IllegalStateException("failed to create sftp Client", e);
         }
+        this.sharedSession = leased;
+        this.channelSftp = channel;
+    }
+
+    /**
+     * Key of the host the connection belongs to, null for a single host.
+     */
+    public String getHostKey() {
+        return hostKey;
     }
 
     /**
      * disconnect.
      */
     protected final void disconnect() {
-        if (session != null) {
-            session.disconnect();
-        }
+        channelSftp.disconnect();
+        sessionPool.release(sharedSession);
+    }
+
+    /**
+     * Transport state of the session and the channel, no request is sent to the server.
+     */
+    protected boolean isConnected() {
+        return sharedSession.getSession().isConnected() && channelSftp.isConnected() && !channelSftp.isClosed();
     }
 
     /**
@@ -60,7 +90,7 @@ public class SftpClient {
      */
     protected boolean test() {
         try {
-            if (channelSftp.isConnected() && originalDir.equals(channelSftp.pwd())) {
+            if (sharedSession.getSession().isConnected() && channelSftp.isConnected() && originalDir.equals(channelSftp.pwd())) {
                 channelSftp.lstat(originalDir);
                 return true;
             }
@@ -80,44 +110,4 @@ public class SftpClient {
             return false;
         }
     }
-
-    private static class SftpAuthKeyUserInfo  implements UserInfo {
-        /**
-         * ssh private key passphrase
-         */
-        private final String passphrase;
-
-        public SftpAuthKeyUserInfo  (String passphrase) {
-            this.passphrase = passphrase;
-        }
-
-        @Override
-        public String getPassphrase() {
-            return passphrase;
-        }
-
-        @Override
-        public String getPassword() {
-            return null;
-        }
-
-        @Override
-        public boolean promptPassphrase(String s) {
-            return true;
-        }
-
-        @Override
-        public boolean promptPassword(String s) {
-            return false;
-        }
-
-        @Override
-        public boolean promptYesNo(String s) {
-            return true;
-        }
-
-        @Override
-        public void showMessage(String message) {
-        }
-    }
 }
@@ -0,0 +1,34 @@
+package io.github.lihewei7.easysftp.core;
+
+/**
+ * Receives timings and byte counts from {@link SftpPool} and {@link SftpTemplate}.
+ * It is called on the hot path, implementations must be cheap and must not throw.
+ * The host name is null for a single host.
+ *
+ * @author: lihewei
+ */
+public interface SftpMetrics {
+
+    SftpMetrics NONE = new SftpMetrics() {
+    };
+
+    /**
+     * A template operation completed, including the time spent borrowing the connection.
+     * @param operation name of the template method, "execute" for custom callbacks.
+     */
+    default void recordOperation(String hostName, String operation, long nanos, boolean success) {
+    }
+
+    /**
+     * File content was transferred.
+     * @param direction "upload" or "download".
+     */
+    default void recordTransfer(String hostName, String direction, long bytes, long nanos) {
+    }
+
+    /**
+     * The pool tried to open a new connection.
+     */
+    default void recordConnect(String hostName, long nanos, boolean success) {
+    }
+}
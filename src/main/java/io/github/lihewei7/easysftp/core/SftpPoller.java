@@ -0,0 +1,248 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import io.github.lihewei7.easysftp.config.PollerProperties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * @explain: Polls remote drop folders and hands their new or changed files to handlers.
+ * Every watched directory keeps a snapshot of name to size and mtime, a poll streams the listing
+ * through it and only files that differ from the snapshot are considered. A file is delivered once
+ * two polls at least stableTime apart saw it with the same size and mtime, so files still being
+ * written are not picked up. All directories of one host are listed over one pooled connection per cycle,
+ * handlers run on a bounded pool and a file that does not fit into its queue waits for the next poll.
+ * @author: lihewei
+ */
+public class SftpPoller {
+    private static final Log _logger = LogFactory.getLog(SftpPoller.class);
+    private static final String SINGLE_HOST = "";
+    private final SftpTemplate sftpTemplate;
+    private final PollerProperties pollerProperties;
+    private final Map<String, HostWatches> hosts = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor scheduler;
+    private ThreadPoolExecutor handlers;
+
+    public SftpPoller(SftpTemplate sftpTemplate) {
+        this(sftpTemplate, new PollerProperties());
+    }
+
+    public SftpPoller(SftpTemplate sftpTemplate, PollerProperties pollerProperties) {
+        this.sftpTemplate = sftpTemplate;
+        this.pollerProperties = pollerProperties;
+    }
+
+    /**
+     * Watch a directory of a single host.
+     * @see #watch(String, String, Predicate, PolledFileHandler)
+     */
+    public void watch(String dir, Predicate<ChannelSftp.LsEntry> filter, PolledFileHandler handler) {
+        watch(null, dir, filter, handler);
+    }
+
+    /**
+     * Watch a directory, files already in it are delivered as well.
+     * @param hostName host key of multiple hosts, null for a single host.
+     * @param dir      the remote directory.
+     * @param filter   files it rejects are ignored, null accepts all files.
+     * @param handler  receives the stable new and changed files.
+     */
+    public synchronized void watch(String hostName, String dir, Predicate<ChannelSftp.LsEntry> filter, PolledFileHandler handler) {
+        Assert.hasLength(dir, "dir must not be null");
+        Assert.notNull(handler, "handler must not be null");
+        HostWatches host = hosts.computeIfAbsent(hostName == null ? SINGLE_HOST : hostName, key -> new HostWatches(hostName));
+        host.watches.add(new Watch(dir, filter, handler));
+        if (scheduler != null) {
+            schedule(host);
+        }
+    }
+
+    /**
+     * Start polling all watched directories, directories watched later are polled from then on.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = new ScheduledThreadPoolExecutor(Math.max(1, pollerProperties.getPollThreads()), threadFactory("easysftp-poller-"));
+        int handlerThreads = Math.max(1, pollerProperties.getHandlerThreads());
+        handlers = new ThreadPoolExecutor(handlerThreads, handlerThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, pollerProperties.getHandlerQueueCapacity())), threadFactory("easysftp-handler-"));
+        handlers.allowCoreThreadTimeOut(true);
+        hosts.values().forEach(this::schedule);
+    }
+
+    /**
+     * Stop polling, files already handed to handlers are still handled.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        handlers.shutdown();
+        scheduler = null;
+        handlers = null;
+        hosts.values().forEach(host -> host.scheduled = false);
+    }
+
+    private void schedule(HostWatches host) {
+        if (host.scheduled) {
+            return;
+        }
+        host.scheduled = true;
+        ThreadPoolExecutor pool = handlers;
+        scheduler.scheduleWithFixedDelay(() -> poll(host, pool), 0, Math.max(1, pollerProperties.getInterval()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One cycle of a host. An exception escaping the scheduled task would cancel the polling of
+     * the host for good, so any failure only ends this cycle.
+     */
+    private void poll(HostWatches host, ThreadPoolExecutor pool) {
+        try {
+            pollDirectories(host, pool);
+        } catch (RuntimeException e) {
+            _logger.warn("Easysftp: poll of host '" + hostName(host.hostName) + "' failed, it is polled again in the next cycle", e);
+        }
+    }
+
+    /**
+     * All directories of a host over one connection.
+     */
+    private void pollDirectories(HostWatches host, ThreadPoolExecutor pool) {
+        SftpClient sftpClient;
+        try {
+            sftpClient = sftpTemplate.borrow(host.hostName);
+        } catch (RuntimeException e) {
+            _logger.warn("Easysftp: poller could not connect to host '" + hostName(host.hostName) + "'", e);
+            return;
+        }
+        boolean broken = false;
+        try {
+            ChannelSftpWrapper wrapper = sftpTemplate.wrapper(host.hostName, sftpClient.getChannelSftp());
+            for (Watch watch : host.watches) {
+                try {
+                    poll(host.hostName, watch, wrapper, pool);
+                } catch (Exception e) {
+                    _logger.warn("Easysftp: poller could not list '" + watch.dir + "' of host '" + hostName(host.hostName) + "'", e);
+                    if (!sftpClient.test()) {
+                        broken = true;
+                        return;
+                    }
+                }
+            }
+        } finally {
+            sftpTemplate.release(host.hostName, sftpClient, broken);
+        }
+    }
+
+    private void poll(String hostName, Watch watch, ChannelSftpWrapper wrapper, ThreadPoolExecutor pool) throws Exception {
+        long now = System.currentTimeMillis();
+        Set<String> seen = new HashSet<>();
+        wrapper.list(watch.dir, entry -> !entry.getAttrs().isDir() && (watch.filter == null || watch.filter.test(entry)), -1, entry -> {
+            String name = entry.getFilename();
+            SftpATTRS attrs = entry.getAttrs();
+            seen.add(name);
+            FileState state = watch.snapshot.get(name);
+            if (state == null || state.size != attrs.getSize() || state.mtime != attrs.getMTime()) {
+                // New or still changing, its stable time starts now.
+                watch.snapshot.put(name, new FileState(attrs.getSize(), attrs.getMTime(), now));
+            } else if (state.status == FileState.PENDING && now - state.stableSince >= pollerProperties.getStableTime()) {
+                deliver(hostName, watch, name, attrs, state, pool);
+            }
+        });
+        // Files that are gone are forgotten, one that comes back is new again.
+        watch.snapshot.keySet().retainAll(seen);
+    }
+
+    private void deliver(String hostName, Watch watch, String name, SftpATTRS attrs, FileState state, ThreadPoolExecutor pool) {
+        String path = watch.dir.endsWith("/") ? watch.dir + name : watch.dir + "/" + name;
+        state.status = FileState.HANDLING;
+        try {
+            pool.execute(() -> {
+                try {
+                    watch.handler.handle(hostName, path, attrs);
+                    state.status = FileState.DONE;
+                } catch (Exception e) {
+                    _logger.warn("Easysftp: handler failed for '" + path + "' of host '" + hostName(hostName) + "', it is delivered again", e);
+                    state.status = FileState.PENDING;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            state.status = FileState.PENDING;
+        }
+    }
+
+    private static String hostName(String hostName) {
+        return hostName == null ? "default" : hostName;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class HostWatches {
+        private final String hostName;
+        private final List<Watch> watches = new CopyOnWriteArrayList<>();
+        private boolean scheduled;
+
+        HostWatches(String hostName) {
+            this.hostName = hostName;
+        }
+    }
+
+    private static class Watch {
+        private final String dir;
+        private final Predicate<ChannelSftp.LsEntry> filter;
+        private final PolledFileHandler handler;
+        private final Map<String, FileState> snapshot = new ConcurrentHashMap<>();
+
+        Watch(String dir, Predicate<ChannelSftp.LsEntry> filter, PolledFileHandler handler) {
+            this.dir = dir;
+            this.filter = filter;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Snapshot entry of one file.
+     */
+    private static class FileState {
+        static final int PENDING = 0;
+        static final int HANDLING = 1;
+        static final int DONE = 2;
+        private final long size;
+        private final int mtime;
+        private final long stableSince;
+        private volatile int status = PENDING;
+
+        FileState(long size, int mtime, long stableSince) {
+            this.size = size;
+            this.mtime = mtime;
+            this.stableSince = stableSince;
+        }
+    }
+}
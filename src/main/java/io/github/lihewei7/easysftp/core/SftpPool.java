@@ -7,9 +7,26 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectState;
 import org.apache.commons.pool2.impl.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author: lihewei
@@ -17,16 +34,53 @@ import java.util.LinkedHashMap;
 public class SftpPool {
     private static final Log _logger = LogFactory.getLog(SftpPool.class);
     public static final String COULD_NOT_GET_A_RESOURCE_FROM_THE_POOL = "Could not get a resource from the pool";
+    private static final int MAX_WARM_UP_THREADS = 32;
     private GenericObjectPool<SftpClient> genericSftpPool;
     private GenericKeyedObjectPool<String, SftpClient> genericKeyedSftpPool;
+    private Set<String> hostNames = Collections.emptySet();
+    private volatile SftpMetrics metrics = SftpMetrics.NONE;
+    private final long validationWindow;
+    private final long sessionLeakTimeout;
+    private final int minIdle;
+    private volatile boolean idleDeferred;
+    private Map<String, List<String>> groups = Collections.emptyMap();
+    private final AtomicInteger rotation = new AtomicInteger();
+    private CircuitBreaker circuitBreaker;
+    private Map<String, CircuitBreaker> circuitBreakers = Collections.emptyMap();
 
     public SftpPool(SftpProperties sftpProperties, PoolProperties poolProperties) {
-        this.genericSftpPool = new GenericObjectPool<>(new PooledClientFactory(sftpProperties), getPoolConfig(poolProperties));
+        this.validationWindow = poolProperties.getValidationWindow();
+        this.sessionLeakTimeout = poolProperties.getSessionLeakTimeout();
+        this.minIdle = poolProperties.getMinIdle();
+        this.idleDeferred = poolProperties.isLazyInit();
+        this.circuitBreaker = circuitBreaker(null, poolProperties);
+        this.genericSftpPool = new GenericObjectPool<>(new PooledClientFactory(sftpProperties, poolProperties.getChannelsPerSession()), getPoolConfig(poolProperties));
         _logger.info("Easysftp: Created");
     }
 
-    public SftpPool(LinkedHashMap sftpPropertiesMap,PoolProperties poolProperties){
-        this.genericKeyedSftpPool = new GenericKeyedObjectPool<>(new keyedPooledClientFactory(sftpPropertiesMap),getKeyedPoolConfig(poolProperties));
+    public SftpPool(LinkedHashMap<String, SftpProperties> sftpPropertiesMap,PoolProperties poolProperties){
+        this(sftpPropertiesMap, poolProperties, null);
+    }
+
+    /**
+     * @param groups group name to the keys of its member hosts, may be null.
+     */
+    public SftpPool(LinkedHashMap<String, SftpProperties> sftpPropertiesMap, PoolProperties poolProperties,
+                    Map<String, List<String>> groups) {
+        this.validationWindow = poolProperties.getValidationWindow();
+        this.sessionLeakTimeout = poolProperties.getSessionLeakTimeout();
+        this.minIdle = poolProperties.getMinIdle();
+        this.idleDeferred = poolProperties.isLazyInit();
+        this.genericKeyedSftpPool = new GenericKeyedObjectPool<>(new keyedPooledClientFactory(sftpPropertiesMap, poolProperties.getChannelsPerSession()),getKeyedPoolConfig(poolProperties));
+        this.hostNames = Collections.unmodifiableSet(new LinkedHashSet<>(sftpPropertiesMap.keySet()));
+        Map<String, CircuitBreaker> breakers = new HashMap<>();
+        for (String hostName : hostNames) {
+            breakers.put(hostName, circuitBreaker(hostName, poolProperties));
+        }
+        this.circuitBreakers = breakers;
+        if (groups != null) {
+            this.groups = checkGroups(groups);
+        }
         _logger.info("multiple-host Easysftp Successfully created");
     }
 
@@ -37,19 +91,331 @@ public class SftpPool {
         return genericSftpPool != null;
     }
 
+    /**
+     * Host names of a multiple-host pool, empty for a single host.
+     */
+    public Set<String> getHostNames() {
+        return hostNames;
+    }
+
+    public void setMetrics(SftpMetrics metrics) {
+        this.metrics = metrics == null ? SftpMetrics.NONE : metrics;
+    }
+
+    /**
+     * Time after which an open session is reported as leaked, 0 if not checked.
+     */
+    long getSessionLeakTimeout() {
+        return sessionLeakTimeout;
+    }
+
+    /**
+     * Maximum number of connections lent out at the same time, over all hosts.
+     * Negative if the pool is unbounded.
+     */
+    public int getMaxActive() {
+        if (genericSftpPool != null) {
+            return genericSftpPool.getMaxTotal();
+        }
+        int maxTotal = genericKeyedSftpPool.getMaxTotal();
+        int maxTotalPerKey = genericKeyedSftpPool.getMaxTotalPerKey();
+        if (maxTotalPerKey < 0) {
+            return maxTotal;
+        }
+        int allHosts = maxTotalPerKey * hostNames.size();
+        return maxTotal < 0 ? allHosts : Math.min(maxTotal, allHosts);
+    }
+
+    /**
+     * Maximum number of connections of one host, or of all members of a group, lent out at the same time.
+     * The key is null for a single host. Negative if unbounded.
+     */
+    public int getMaxActive(String key) {
+        if (key == null || genericSftpPool != null) {
+            return getMaxActive();
+        }
+        int maxTotal = genericKeyedSftpPool.getMaxTotal();
+        int maxTotalPerKey = genericKeyedSftpPool.getMaxTotalPerKey();
+        List<String> members = groups.get(key);
+        int hosts = members == null ? 1 : members.size();
+        if (maxTotalPerKey < 0) {
+            return maxTotal;
+        }
+        return maxTotal < 0 ? maxTotalPerKey * hosts : Math.min(maxTotal, maxTotalPerKey * hosts);
+    }
+
+    /**
+     * Number of connections borrowed from the pool of the host, the key is null for a single host.
+     */
+    public int getNumActive(String key) {
+        return key == null ? genericSftpPool.getNumActive() : genericKeyedSftpPool.getNumActive(key);
+    }
+
+    /**
+     * Number of idle connections in the pool of the host, the key is null for a single host.
+     */
+    public int getNumIdle(String key) {
+        return key == null ? genericSftpPool.getNumIdle() : genericKeyedSftpPool.getNumIdle(key);
+    }
+
+    /**
+     * Number of callers blocked waiting for a connection of the host, the key is null for a single host.
+     */
+    public int getNumWaiters(String key) {
+        return key == null ? genericSftpPool.getNumWaiters() : genericKeyedSftpPool.getNumWaitersByKey().getOrDefault(key, 0);
+    }
+
+    /**
+     * Mean time callers waited in borrowObject over the recent borrows, in milliseconds.
+     */
+    public long getMeanBorrowWaitTimeMillis() {
+        return basePool().getMeanBorrowWaitTimeMillis();
+    }
+
+    /**
+     * Total number of connections created since the pool was created.
+     */
+    public long getCreatedCount() {
+        return basePool().getCreatedCount();
+    }
+
+    /**
+     * Number of connections destroyed because they failed validation on borrow.
+     */
+    public long getDestroyedByBorrowValidationCount() {
+        return basePool().getDestroyedByBorrowValidationCount();
+    }
+
+    /**
+     * Algorithms agreed in the last handshake with the host, the key is null for a single host.
+     * @return null before the first connection to the host.
+     */
+    public NegotiatedAlgorithms getNegotiatedAlgorithms(String key) {
+        SessionPool sessionPool = key == null ?
+                ((PooledClientFactory) genericSftpPool.getFactory()).sessionPool :
+                ((keyedPooledClientFactory) genericKeyedSftpPool.getFactory()).sessionPools.get(key);
+        return sessionPool == null ? null : sessionPool.getNegotiatedAlgorithms();
+    }
+
+    /**
+     * Transfer settings of the host, null for a group or an unknown host.
+     */
+    TransferTuning getTuning(String key) {
+        SessionPool sessionPool = key == null ?
+                ((PooledClientFactory) genericSftpPool.getFactory()).sessionPool :
+                ((keyedPooledClientFactory) genericKeyedSftpPool.getFactory()).sessionPools.get(key);
+        return sessionPool == null ? null : sessionPool.getTuning();
+    }
+
+    private BaseGenericObjectPool<SftpClient> basePool() {
+        return genericSftpPool != null ? genericSftpPool : genericKeyedSftpPool;
+    }
+
+    /**
+     * Open minIdle connections of every host in parallel, instead of one by one on first use.
+     * A host that can not be reached is logged and skipped, the others are still warmed up.
+     * @param timeoutMillis maximum time to wait for all connections.
+     * @return number of connections opened.
+     */
+    public int warmUp(long timeoutMillis) {
+        List<String> keys = isUniqueHost() ? Collections.singletonList(null) : new ArrayList<>(hostNames);
+        if (minIdle <= 0 || keys.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        long created = getCreatedCount();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(keys.size() * minIdle, MAX_WARM_UP_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "easysftp-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, List<Future<?>>> connections = new LinkedHashMap<>();
+        for (String key : keys) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < minIdle; i++) {
+                futures.add(executor.submit(() -> {
+                    if (key == null) {
+                        genericSftpPool.addObject();
+                    } else {
+                        genericKeyedSftpPool.addObject(key);
+                    }
+                    return null;
+                }));
+            }
+            connections.put(key == null ? "default" : key, futures);
+        }
+        executor.shutdown();
+        long deadline = start + timeoutMillis;
+        try {
+            for (Map.Entry<String, List<Future<?>>> host : connections.entrySet()) {
+                Throwable failure = null;
+                for (Future<?> future : host.getValue()) {
+                    try {
+                        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException e) {
+                        failure = e.getCause();
+                    } catch (TimeoutException e) {
+                        failure = e;
+                        future.cancel(true);
+                    }
+                }
+                if (failure != null) {
+                    _logger.warn("Easysftp: warm-up of host '" + host.getKey() + "' incomplete", failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        // The pool skips connections beyond maxActive, so count what it really created.
+        int opened = (int) (getCreatedCount() - created);
+        _logger.info("Easysftp: warmed up " + opened + " of " + keys.size() * minIdle + " connections in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return opened;
+    }
+
+    /**
+     * In lazy mode minIdle is kept at zero, so that the evictor opens no connection
+     * before the pool is used, and is restored on the first borrow.
+     */
+    private synchronized void startIdle() {
+        if (!idleDeferred) {
+            return;
+        }
+        if (genericSftpPool != null) {
+            genericSftpPool.setMinIdle(minIdle);
+        } else {
+            genericKeyedSftpPool.setMinIdlePerKey(minIdle);
+        }
+        idleDeferred = false;
+    }
+
     /**
      * @Description: Obtain an sftp connection from the pool.
      * @author: lihewei
      */
     public SftpClient borrowObject(String key) {
+        if (idleDeferred) {
+            startIdle();
+        }
+        if (key != null && groups.containsKey(key)) {
+            return borrowFromGroup(key);
+        }
+        return borrowFromHost(key);
+    }
+
+    /**
+     * Borrow through the circuit breaker of the host, fails fast while the circuit is open.
+     */
+    private SftpClient borrowFromHost(String key) {
+        CircuitBreaker breaker = key == null ? circuitBreaker : circuitBreakers.get(key);
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new PoolException(COULD_NOT_GET_A_RESOURCE_FROM_THE_POOL + ", circuit of host '"
+                    + (key == null ? "default" : key) + "' is open", null);
+        }
         try {
-            return key == null ?
+            SftpClient sftpClient = key == null ?
                     genericSftpPool.borrowObject() : genericKeyedSftpPool.borrowObject(key);
+            if (breaker != null) {
+                breaker.onSuccess();
+            }
+            return sftpClient;
         } catch (Exception e) {
+            if (breaker != null) {
+                // An exhausted pool is busy, not broken.
+                if (e instanceof NoSuchElementException) {
+                    breaker.onIgnored();
+                } else {
+                    breaker.onFailure();
+                }
+            }
             throw new PoolException(COULD_NOT_GET_A_RESOURCE_FROM_THE_POOL, e);
         }
     }
 
+    /**
+     * State of the circuit breaker of the host, key is null for a single host.
+     * Always CLOSED if the circuit breaker is disabled.
+     */
+    public CircuitBreaker.State getCircuitState(String key) {
+        CircuitBreaker breaker = key == null ? circuitBreaker : circuitBreakers.get(key);
+        return breaker == null ? CircuitBreaker.State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Names of the host groups, empty if there are none.
+     */
+    public Set<String> getGroupNames() {
+        return groups.keySet();
+    }
+
+    /**
+     * Borrow from the least busy healthy member of the group, by borrowed plus waiting connections.
+     * A member that can not be connected is tried no further and the next member is borrowed from.
+     * Members with an open circuit are left out of rotation until their circuit lets a probe through.
+     */
+    private SftpClient borrowFromGroup(String group) {
+        List<String> members = groups.get(group);
+        Set<String> tried = new HashSet<>();
+        Exception failure = null;
+        String member;
+        while ((member = leastBusy(members, tried)) != null) {
+            tried.add(member);
+            try {
+                return borrowFromHost(member);
+            } catch (PoolException e) {
+                if (!(e.getCause() instanceof NoSuchElementException)) {
+                    _logger.warn("Easysftp: host '" + member + "' of group '" + group + "' is unavailable, trying another member", e);
+                }
+                failure = e;
+            }
+        }
+        throw new PoolException(COULD_NOT_GET_A_RESOURCE_FROM_THE_POOL + " of group '" + group + "'", failure);
+    }
+
+    private String leastBusy(List<String> members, Set<String> excluded) {
+        String best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        boolean bestHealthy = false;
+        Map<String, Integer> waiters = genericKeyedSftpPool.getNumWaitersByKey();
+        // Start at a rotating member so that ties are spread evenly.
+        int start = Math.floorMod(rotation.getAndIncrement(), members.size());
+        for (int i = 0; i < members.size(); i++) {
+            String member = members.get((start + i) % members.size());
+            if (excluded.contains(member)) {
+                continue;
+            }
+            CircuitBreaker breaker = circuitBreakers.get(member);
+            boolean healthy = breaker == null || breaker.isAvailable();
+            int load = genericKeyedSftpPool.getNumActive(member) + waiters.getOrDefault(member, 0);
+            if (best == null || (healthy && !bestHealthy) || (healthy == bestHealthy && load < bestLoad)) {
+                best = member;
+                bestLoad = load;
+                bestHealthy = healthy;
+            }
+        }
+        return best;
+    }
+
+    private Map<String, List<String>> checkGroups(Map<String, List<String>> groups) {
+        Map<String, List<String>> checked = new LinkedHashMap<>();
+        groups.forEach((group, members) -> {
+            if (hostNames.contains(group)) {
+                throw new IllegalArgumentException("sftp group '" + group + "' has the name of a host");
+            }
+            if (members == null || members.isEmpty()) {
+                throw new IllegalArgumentException("sftp group '" + group + "' has no members");
+            }
+            for (String member : members) {
+                if (!hostNames.contains(member)) {
+                    throw new IllegalArgumentException("sftp group '" + group + "' has unknown member '" + member + "'");
+                }
+            }
+            checked.put(group, Collections.unmodifiableList(new ArrayList<>(members)));
+        });
+        return Collections.unmodifiableMap(checked);
+    }
+
     /**
      * @Description: The sftp connection is returned to the pool.
      * @author: lihewei
@@ -59,7 +425,7 @@ public class SftpPool {
             if (key == null){
                 genericSftpPool.returnObject(sftpClient);
             }else {
-                genericKeyedSftpPool.returnObject(key, sftpClient);
+                genericKeyedSftpPool.returnObject(sftpClient.getHostKey(), sftpClient);
             }
         } catch (Exception e) {
             throw new PoolException("Could not return a resource from the pool", e);
@@ -75,25 +441,73 @@ public class SftpPool {
             if (key == null){
                 genericSftpPool.invalidateObject(sftpClient);
             }else {
-                genericKeyedSftpPool.invalidateObject(key,sftpClient);
+                genericKeyedSftpPool.invalidateObject(sftpClient.getHostKey(), sftpClient);
             }
         } catch (Exception e) {
             throw new PoolException("Could not invalidate the broken resource", e);
         }
     }
 
+    /**
+     * Stop the evictor and disconnect the idle connections, borrowed ones are disconnected when
+     * they are returned. Also the destroy method of the Spring bean.
+     */
+    public void close() {
+        basePool().close();
+        _logger.info("Easysftp: Closed");
+    }
+
+    private SftpClient connect(String key, SessionPool sessionPool) {
+        // Keeps the evictor from reconnecting to a host known to be down.
+        CircuitBreaker breaker = key == null ? circuitBreaker : circuitBreakers.get(key);
+        if (breaker != null && breaker.isOpen()) {
+            throw new IllegalStateException("circuit of host '" + (key == null ? "default" : key) + "' is open");
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            SftpClient sftpClient = new SftpClient(sessionPool, key);
+            success = true;
+            return sftpClient;
+        } finally {
+            metrics.recordConnect(key, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Circuit breaker of the host, null if it is disabled.
+     */
+    private static CircuitBreaker circuitBreaker(String hostName, PoolProperties poolProperties) {
+        if (poolProperties.getCircuitFailureThreshold() <= 0) {
+            return null;
+        }
+        return new CircuitBreaker(hostName, poolProperties.getCircuitFailureThreshold(), poolProperties.getCircuitOpenTimeout(),
+                poolProperties.getCircuitMaxOpenTimeout(), poolProperties.getCircuitHalfOpenProbes());
+    }
+
+    /**
+     * A connection is only returned after a successful reset, so one returned within the validation
+     * window is known to work and only its transport state is checked. The evictor always does the full check.
+     */
+    private boolean validate(PooledObject<SftpClient> p) {
+        if (validationWindow > 0 && p.getState() != PooledObjectState.EVICTION
+                && System.currentTimeMillis() - p.getLastReturnInstant().toEpochMilli() < validationWindow) {
+            return p.getObject().isConnected();
+        }
+        return p.getObject().test();
+    }
 
-    private static class PooledClientFactory extends BasePooledObjectFactory<SftpClient> {
+    private class PooledClientFactory extends BasePooledObjectFactory<SftpClient> {
 
-        private final SftpProperties sftpProperties;
+        private final SessionPool sessionPool;
 
-        public PooledClientFactory(SftpProperties sftpProperties) {
-            this.sftpProperties = sftpProperties;
+        public PooledClientFactory(SftpProperties sftpProperties, int channelsPerSession) {
+            this.sessionPool = new SessionPool(sftpProperties, channelsPerSession);
         }
 
         @Override
         public SftpClient create() {
-            return new SftpClient(sftpProperties);
+            return connect(null, sessionPool);
         }
 
         @Override
@@ -103,7 +517,7 @@ public class SftpPool {
 
         @Override
         public boolean validateObject(PooledObject<SftpClient> p) {
-            return p.getObject().test();
+            return validate(p);
         }
 
         @Override
@@ -114,17 +528,22 @@ public class SftpPool {
     }
 
 
-    private static class keyedPooledClientFactory extends BaseKeyedPooledObjectFactory<String, SftpClient> {
+    private class keyedPooledClientFactory extends BaseKeyedPooledObjectFactory<String, SftpClient> {
 
-        private LinkedHashMap<String,SftpProperties> sftpPropertiesMap;
+        private final Map<String, SessionPool> sessionPools = new HashMap<>();
 
-        public keyedPooledClientFactory(LinkedHashMap sftpPropertiesMap){
-            this.sftpPropertiesMap = sftpPropertiesMap;
+        public keyedPooledClientFactory(LinkedHashMap<String, SftpProperties> sftpPropertiesMap, int channelsPerSession){
+            sftpPropertiesMap.forEach((key, sftpProperties) ->
+                    sessionPools.put(key, new SessionPool(sftpProperties, channelsPerSession)));
         }
 
         @Override
         public SftpClient create(String key) {
-            return new SftpClient(sftpPropertiesMap.get(key));
+            SessionPool sessionPool = sessionPools.get(key);
+            if (sessionPool == null) {
+                throw new IllegalArgumentException("unknown sftp host '" + key + "'");
+            }
+            return connect(key, sessionPool);
         }
 
         @Override
@@ -139,13 +558,13 @@ public class SftpPool {
 
         @Override
         public boolean validateObject(String key, PooledObject<SftpClient> p) {
-            return p.getObject().test();
+            return validate(p);
         }
     }
 
     private GenericObjectPoolConfig<SftpClient> getPoolConfig(PoolProperties poolProperties) {
         GenericObjectPoolConfig<SftpClient> config = commonPoolConfig(new GenericObjectPoolConfig<>(), poolProperties);
-        config.setMinIdle(poolProperties.getMinIdle());
+        config.setMinIdle(poolProperties.isLazyInit() ? 0 : poolProperties.getMinIdle());
         config.setMaxIdle(poolProperties.getMaxIdle());
         config.setMaxTotal(poolProperties.getMaxActive());
         return config;
@@ -153,7 +572,7 @@ public class SftpPool {
 
     private GenericKeyedObjectPoolConfig<SftpClient> getKeyedPoolConfig(PoolProperties poolProperties) {
         GenericKeyedObjectPoolConfig<SftpClient> config = commonPoolConfig(new GenericKeyedObjectPoolConfig<>(), poolProperties);
-        config.setMinIdlePerKey(poolProperties.getMinIdle());
+        config.setMinIdlePerKey(poolProperties.isLazyInit() ? 0 : poolProperties.getMinIdle());
         config.setMaxIdlePerKey(poolProperties.getMaxIdle());
         config.setMaxTotalPerKey(poolProperties.getMaxActivePerKey());
         config.setMaxTotal(poolProperties.getMaxActive());
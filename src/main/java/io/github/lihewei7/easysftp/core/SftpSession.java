@@ -0,0 +1,171 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.SftpException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @explain: One pooled connection pinned to the thread that opened the session. While it is open,
+ * the operations of {@link SftpTemplate} on its host run on this connection without a borrow, validation
+ * and reset per call, so the working directory is also kept from one call to the next. The connection
+ * is returned to the pool when the session is closed. A session that is still open after
+ * sessionLeakTimeout is logged with where it was opened, once its thread has ended it is closed.
+ * <pre>
+ * try (SftpSession session = sftpTemplate.openSession("remote-1")) {
+ *     sftpTemplate.upload("D:\\a.docx", "/home/easysftp/a.docx");
+ *     sftpTemplate.download("/home/easysftp/b.docx", "D:\\b.docx");
+ * }
+ * </pre>
+ * @author: lihewei
+ */
+public class SftpSession implements Closeable {
+    private static final Log _logger = LogFactory.getLog(SftpSession.class);
+    private static volatile ScheduledThreadPoolExecutor leakCheck;
+
+    private final SftpTemplate sftpTemplate;
+    private final String hostName;
+    private final SftpSession outer;
+    private final HostsManage.Hosts previousHost;
+    private final Thread owner;
+    private final long leakTimeout;
+    private Throwable openedAt;
+    private volatile ScheduledFuture<?> leakFuture;
+    private boolean leakReported;
+    private SftpClient sftpClient;
+    private volatile boolean closed;
+
+    /**
+     * @param outer open session of the same host this one is nested in, it keeps the connection. May be null.
+     * @param previousHost host bound to the thread before the session, bound again when it is closed.
+     */
+    SftpSession(SftpTemplate sftpTemplate, String hostName, SftpSession outer, HostsManage.Hosts previousHost, long leakTimeout) {
+        this.sftpTemplate = sftpTemplate;
+        this.hostName = hostName;
+        this.outer = outer;
+        this.previousHost = previousHost;
+        this.owner = Thread.currentThread();
+        this.leakTimeout = leakTimeout;
+        if (outer == null) {
+            sftpClient = sftpTemplate.borrow(hostName);
+            watch();
+        }
+    }
+
+    /**
+     * Host key of the session, null for a single host.
+     */
+    public String getHostName() {
+        return hostName;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Run the action on the pinned connection. If it broke the connection it is destroyed,
+     * the next action borrows a new one. A nested session whose outer one was closed first
+     * borrows its own connection, returned when it is closed itself.
+     */
+    <T> T execute(SftpCallback<T> action) throws SftpException {
+        if (outer != null && !outer.closed) {
+            return outer.execute(action);
+        }
+        if (sftpClient == null) {
+            sftpClient = sftpTemplate.borrow(hostName);
+            if (leakFuture == null) {
+                watch();
+            }
+        }
+        try {
+            return action.doInSftp(sftpClient.getChannelSftp());
+        } catch (SftpException | RuntimeException e) {
+            if (!sftpClient.test()) {
+                sftpTemplate.release(hostName, sftpClient, true);
+                sftpClient = null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Return the connection to the pool, a nested session leaves it to the outer one unless it had to
+     * borrow its own. It should be called on the thread that opened the session.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (Thread.currentThread() == owner) {
+            sftpTemplate.sessionClosed(this, previousHost);
+        }
+        if (leakFuture != null) {
+            leakFuture.cancel(false);
+        }
+        if (sftpClient != null) {
+            sftpTemplate.release(hostName, sftpClient, false);
+            sftpClient = null;
+        }
+    }
+
+    /**
+     * Report the session if it is still open after the leak timeout.
+     */
+    private void watch() {
+        if (leakTimeout > 0) {
+            openedAt = new Throwable("Session opened here");
+            leakFuture = leakCheck().schedule(this::checkLeak, leakTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void checkLeak() {
+        if (closed) {
+            return;
+        }
+        if (!owner.isAlive()) {
+            _logger.warn("Easysftp: session of host '" + hostName(hostName) + "' was not closed by thread '"
+                    + owner.getName() + "' that has ended, its connection is returned to the pool", openedAt);
+            close();
+            return;
+        }
+        if (!leakReported) {
+            leakReported = true;
+            _logger.warn("Easysftp: session of host '" + hostName(hostName) + "' is open in thread '" + owner.getName()
+                    + "' for more than " + leakTimeout + " ms, it may never be closed", openedAt);
+        }
+        // Watch on until the session is closed or its thread ends.
+        leakFuture = leakCheck().schedule(this::checkLeak, leakTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private static String hostName(String hostName) {
+        return hostName == null ? "default" : hostName;
+    }
+
+    private static ScheduledThreadPoolExecutor leakCheck() {
+        ScheduledThreadPoolExecutor executor = leakCheck;
+        if (executor == null) {
+            synchronized (SftpSession.class) {
+                executor = leakCheck;
+                if (executor == null) {
+                    executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, "easysftp-session-check-1");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.setRemoveOnCancelPolicy(true);
+                    leakCheck = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
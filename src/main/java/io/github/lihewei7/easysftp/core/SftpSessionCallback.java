@@ -0,0 +1,13 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.SftpException;
+
+/**
+ * @explain: Operations run by {@link SftpTemplate#withSession} while its connection is pinned.
+ * @author: lihewei
+ */
+@FunctionalInterface
+public interface SftpSessionCallback<T> {
+
+    T doInSession(SftpTemplate sftpTemplate) throws SftpException;
+}
@@ -2,16 +2,60 @@ package io.github.lihewei7.easysftp.core;
 
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import io.github.lihewei7.easysftp.config.TransferProperties;
 import org.springframework.util.Assert;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
 /**
  * @author: lihewei
  */
 public class SftpTemplate {
     private final SftpPool sftpPool;
+    private final TransferProperties transferProperties;
+    private final Map<String, RemoteDirectoryCache> directoryCaches = new ConcurrentHashMap<>();
+    private final LocalFileIo localIo;
+    private final ThreadLocal<Deque<SftpSession>> sessions = new ThreadLocal<>();
+    private volatile SftpMetrics metrics = SftpMetrics.NONE;
 
     public SftpTemplate(SftpPool sftpPool) {
+        this(sftpPool, new TransferProperties());
+    }
+
+    public SftpTemplate(SftpPool sftpPool, TransferProperties transferProperties) {
         this.sftpPool = sftpPool;
+        this.transferProperties = transferProperties;
+        // One direct buffer per connection covers all transfers that can run at the same time.
+        this.localIo = transferProperties.isDirectIo() ? new LocalFileIo(
+                transferProperties.getBufferSize() > 0 ? transferProperties.getBufferSize() : ChannelSftpWrapper.DEFAULT_BUFFER_SIZE,
+                transferProperties.getMmapThreshold(), transferProperties.isPreallocate(),
+                sftpPool.getMaxActive() > 0 ? sftpPool.getMaxActive() : 8) : null;
     }
 
     /**
@@ -19,49 +63,772 @@ public class SftpTemplate {
      * such as obtaining and returning connections.
      */
     public <T> T execute(SftpCallback<T> action) throws SftpException {
+        return execute("execute", action);
+    }
+
+    /**
+     * The sftp template method with no return value includes basic SFTP operations,
+     * such as obtaining and returning connections.
+     */
+    public void executeWithoutResult(SftpCallbackWithoutResult action) throws SftpException {
+        executeWithoutResult("execute", action);
+    }
+
+    public void setMetrics(SftpMetrics metrics) {
+        this.metrics = metrics == null ? SftpMetrics.NONE : metrics;
+    }
+
+    public void download(String from, String to) throws SftpException {
+        download(from, to, null);
+    }
+
+    /**
+     * Download a file and report the progress to the monitor.
+     * @param from    Path of the remote file
+     * @param to      Path after downloading the file to a local directory
+     * @param monitor receives the progress, returning false from count stops the transfer,
+     *                leaves the partial file in place and throws an SftpException. May be null.
+     * @throws SftpException
+     */
+    public void download(String from, String to, SftpProgressMonitor monitor) throws SftpException {
+        this.executeWithoutResult("download", channelSftp -> {
+            long start = System.nanoTime();
+            CountingMonitor counted = new CountingMonitor(monitor);
+            wrapper(channelSftp).download(from, to, counted);
+            transferred(currentHostName(), "download", counted, from, start);
+        });
+    }
+
+    /**
+     * Download a file and verify it with a checksum computed while it is written, without a second read.
+     * A local file that does not match is deleted and an SftpException is thrown.
+     * @param from      Path of the remote file
+     * @param to        Path after downloading the file to a local directory
+     * @param algorithm checksum algorithm
+     * @param expected  checksum the file must have as hex, null to only compute it
+     * @return checksum of the downloaded file as lower case hex
+     * @throws SftpException
+     */
+    public String download(String from, String to, ChecksumAlgorithm algorithm, String expected) throws SftpException {
+        return this.execute("download", channelSftp -> {
+            long start = System.nanoTime();
+            String checksum = wrapper(channelSftp).download(from, to, algorithm, expected);
+            transferred(currentHostName(), "download", new File(to).length(), start);
+            return checksum;
+        });
+    }
+
+    /**
+     * Download a file into a stream, the stream is not closed.
+     * @param from Path of the remote file
+     * @param to   Destination of the file content
+     * @throws SftpException
+     */
+    public void download(String from, OutputStream to) throws SftpException {
+        this.executeWithoutResult("download", channelSftp -> {
+            long start = System.nanoTime();
+            CountingStreams.Out counted = new CountingStreams.Out(to);
+            wrapper(channelSftp).download(from, counted);
+            transferred(currentHostName(), "download", counted.getCount(), start);
+        });
+    }
+
+    /**
+     * Open a remote file for reading. The connection stays borrowed until the stream is closed,
+     * so it must be used with try-with-resources.
+     * @param from Path of the remote file
+     * @throws SftpException
+     */
+    public InputStream openInputStream(String from) throws SftpException {
+        return openStream("openInputStream", "download", channelSftp -> wrapper(channelSftp).openInputStream(from), PooledStreams.In::new);
+    }
+
+    /**
+     * Open a remote file for reading from the given byte, to resume a read that was stopped.
+     * The connection stays borrowed until the stream is closed.
+     * @param from   Path of the remote file
+     * @param offset number of bytes skipped at the start of the file
+     * @throws SftpException
+     */
+    public InputStream openInputStream(String from, long offset) throws SftpException {
+        return openStream("openInputStream", "download", channelSftp -> wrapper(channelSftp).openInputStream(from, offset), PooledStreams.In::new);
+    }
+
+    /**
+     * Download a large file in byte ranges, each range is fetched on its own pooled connection
+     * and written in place into the local file. A failed range is retried on its own.
+     * @see TransferProperties#getSegmentSize()
+     * @param from Path of the remote file
+     * @param to   Path after downloading the file to a local directory
+     * @throws SftpException
+     */
+    public void parallelDownload(String from, String to) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        String hostName = null;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            hostName = currentHostName();
+            String host = hostName;
+            long size = doExecute(host, channelSftp -> wrapper(host, channelSftp).size(from));
+            long segmentSize = Math.max(1, transferProperties.getSegmentSize());
+            if (size <= segmentSize) {
+                doExecute(host, channelSftp -> {
+                    wrapper(host, channelSftp).download(from, to);
+                    return null;
+                });
+            } else {
+                downloadSegments(host, from, Paths.get(to), size, segmentSize);
+            }
+            transferred(host, "download", size, start);
+            success = true;
+        } finally {
+            HostsManage.clear();
+            metrics.recordOperation(hostName, "parallelDownload", System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Download a file that continues where a previous attempt stopped, even after a restart.
+     * @see TransferProperties#getJournalDir()
+     * @param from Path of the remote file
+     * @param to   Path after downloading the file to a local directory
+     * @throws SftpException
+     */
+    public void resumableDownload(String from, String to) throws SftpException {
+        this.executeWithoutResult("resumableDownload", channelSftp -> {
+            long start = System.nanoTime();
+            wrapper(channelSftp).resumableDownload(from, to, journal("download", to, from));
+            transferred(currentHostName(), "download", new File(to).length(), start);
+        });
+    }
+
+    public void upload(String from, String to) throws SftpException {
+        upload(from, to, null);
+    }
+
+    /**
+     * Upload a file and report the progress to the monitor.
+     * @param from    Local source file path
+     * @param to      Remote path after the file is uploaded
+     * @param monitor receives the progress, returning false from count stops the transfer,
+     *                leaves the partial file in place and throws an SftpException. May be null.
+     * @throws SftpException
+     */
+    public void upload(String from, String to, SftpProgressMonitor monitor) throws SftpException {
+        this.executeWithoutResult("upload", channelSftp -> {
+            long start = System.nanoTime();
+            CountingMonitor counted = new CountingMonitor(monitor);
+            wrapper(channelSftp).upload(from, to, counted);
+            transferred(currentHostName(), "upload", counted, from, start);
+        });
+    }
+
+    /**
+     * Upload a file and verify the local source with a checksum computed while it is read, without
+     * a second read. The remote file is checked to have the size of the bytes sent, its content is
+     * not read back. A remote file that does not match is removed and an SftpException is thrown.
+     * @param from      Local source file path
+     * @param to        Remote path after the file is uploaded
+     * @param algorithm checksum algorithm
+     * @param expected  checksum the local file must have as hex, null to only compute it
+     * @return checksum of the bytes read from the local file as lower case hex
+     * @throws SftpException
+     */
+    public String upload(String from, String to, ChecksumAlgorithm algorithm, String expected) throws SftpException {
+        return this.execute("upload", channelSftp -> {
+            long start = System.nanoTime();
+            String checksum = wrapper(channelSftp).upload(from, to, algorithm, expected);
+            transferred(currentHostName(), "upload", new File(from).length(), start);
+            return checksum;
+        });
+    }
+
+    /**
+     * Upload everything read from a stream to a remote file, the stream is not closed.
+     * @param from Source of the file content
+     * @param to   Remote path after the file is uploaded
+     * @throws SftpException
+     */
+    public void upload(InputStream from, String to) throws SftpException {
+        this.executeWithoutResult("upload", channelSftp -> {
+            long start = System.nanoTime();
+            CountingStreams.In counted = new CountingStreams.In(from);
+            wrapper(channelSftp).upload(counted, to);
+            transferred(currentHostName(), "upload", counted.getCount(), start);
+        });
+    }
+
+    /**
+     * Create a remote file for writing. The connection stays borrowed until the stream is closed,
+     * so it must be used with try-with-resources.
+     * @param to Remote path of the file
+     * @throws SftpException
+     */
+    public OutputStream openOutputStream(String to) throws SftpException {
+        return openStream("openOutputStream", "upload", channelSftp -> wrapper(channelSftp).openOutputStream(to), PooledStreams.Out::new);
+    }
+
+    /**
+     * Upload a file that continues where a previous attempt stopped, even after a restart.
+     * @see TransferProperties#getJournalDir()
+     * @param from Local source file path
+     * @param to   Remote path after the file is uploaded
+     * @throws SftpException
+     */
+    public void resumableUpload(String from, String to) throws SftpException {
+        this.executeWithoutResult("resumableUpload", channelSftp -> {
+            long start = System.nanoTime();
+            wrapper(channelSftp).resumableUpload(from, to, journal("upload", from, to));
+            transferred(currentHostName(), "upload", new File(from).length(), start);
+        });
+    }
+
+    /**
+     * Upload a local directory tree, remote directories are created once each and the files are
+     * spread over sftp.transfer.directory-parallelism pooled connections.
+     * @param from Local source directory
+     * @param to   Remote directory after the tree is uploaded
+     * @return transferred files and per-file failures, a failure does not stop the tree.
+     * @throws SftpException if the local directory does not exist
+     */
+    public TransferResult uploadDirectory(String from, String to) throws SftpException {
+        return uploadDirectory(from, to, TransferListener.NONE);
+    }
+
+    public TransferResult uploadDirectory(String from, String to, TransferListener listener) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        File local = new File(from);
+        if (!local.isDirectory()) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "local directory '" + from + "' not exists.", new FileNotFoundException(from));
+        }
+        return transferDirectory("uploadDirectory", "upload", hostName -> new DirectoryTransfer(this, hostName,
+                transferProperties.getDirectoryParallelism(), listener).upload(local, to));
+    }
+
+    /**
+     * Bring a remote directory tree up to date with a local one. Every remote directory is listed once,
+     * files with the same size and mtime are skipped, new and changed files are uploaded and get the
+     * local mtime so that the next sync is incremental again.
+     * @param from          Local source directory
+     * @param to            Remote directory kept in sync
+     * @param deleteOrphans whether remote files and directories missing locally are deleted
+     * @return transferred, skipped and deleted files and per-file failures, a failure does not stop the tree.
+     * @throws SftpException if the local directory does not exist
+     */
+    public SyncResult syncDirectory(String from, String to, boolean deleteOrphans) throws SftpException {
+        return syncDirectory(from, to, deleteOrphans, TransferListener.NONE);
+    }
+
+    public SyncResult syncDirectory(String from, String to, boolean deleteOrphans, TransferListener listener) throws SftpException {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        File local = new File(from);
+        if (!local.isDirectory()) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "local directory '" + from + "' not exists.", new FileNotFoundException(from));
+        }
+        return transferDirectory("syncDirectory", "upload", hostName -> new DirectoryTransfer(this, hostName,
+                transferProperties.getDirectoryParallelism(), listener).sync(local, to, deleteOrphans));
+    }
+
+    /**
+     * Download a remote directory tree, the files are spread over
+     * sftp.transfer.directory-parallelism pooled connections.
+     * @param from Remote source directory
+     * @param to   Local directory after the tree is downloaded
+     * @return transferred files and per-file failures, a failure does not stop the tree.
+     */
+    public TransferResult downloadDirectory(String from, String to) {
+        return downloadDirectory(from, to, TransferListener.NONE);
+    }
+
+    public TransferResult downloadDirectory(String from, String to, TransferListener listener) {
+        Assert.hasLength(from, "from must not be null");
+        Assert.hasLength(to, "to must not be null");
+        return transferDirectory("downloadDirectory", "download", hostName -> new DirectoryTransfer(this, hostName,
+                transferProperties.getDirectoryParallelism(), listener).download(from, new File(to)));
+    }
+
+    public boolean exists(String path) throws SftpException {
+        return this.execute("exists", channelSftp -> wrapper(channelSftp).exists(path));
+    }
+
+    public ChannelSftp.LsEntry[] list(String path) throws SftpException {
+        return this.execute("list", channelSftp -> wrapper(channelSftp).list(path));
+    }
+
+    /**
+     * Stream the entries of a directory to the consumer as they arrive, large directories
+     * are never held in memory.
+     * @param path     the remote path, the last element may be a glob such as "*.csv".
+     * @param consumer receives every entry.
+     * @return number of entries passed to the consumer.
+     * @throws SftpException
+     */
+    public int list(String path, Consumer<ChannelSftp.LsEntry> consumer) throws SftpException {
+        return list(path, null, -1, consumer);
+    }
+
+    /**
+     * Stream the entries of a directory that pass the filter, reading stops early
+     * once maxCount entries were accepted.
+     * @param path     the remote path, the last element may be a glob such as "*.csv".
+     * @param filter   entries it rejects are skipped, null accepts all entries.
+     * @param maxCount maximum number of entries, negative for no limit.
+     * @param consumer receives the accepted entries.
+     * @return number of entries passed to the consumer.
+     * @throws SftpException
+     */
+    public int list(String path, Predicate<ChannelSftp.LsEntry> filter, int maxCount,
+                    Consumer<ChannelSftp.LsEntry> consumer) throws SftpException {
+        return this.execute("list", channelSftp -> wrapper(channelSftp).list(path, filter, maxCount, consumer));
+    }
+
+    /**
+     * Open a session on the host of the current call.
+     * @see #openSession(String)
+     */
+    public SftpSession openSession() {
+        return openSession(currentHostName());
+    }
+
+    /**
+     * Pin one pooled connection of the host to the current thread until the returned session is closed.
+     * Operations of this template on the host then run on it, instead of borrowing, validating and
+     * resetting a connection per call. The host is bound to the thread as with
+     * {@link HostsManage#changeHost(String, boolean)} and unbound again when the session is closed.
+     * A session opened inside another one of the same host shares its connection.
+     * @param hostName host key of multiple hosts, ignored for a single host.
+     * @return the session, close it on the same thread, best with try-with-resources.
+     */
+    public SftpSession openSession(String hostName) {
+        boolean uniqueHost = sftpPool.isUniqueHost();
+        if (uniqueHost) {
+            hostName = null;
+        } else {
+            Assert.hasLength(hostName, "hostName must not be null");
+        }
+        SftpSession outer = pinnedSession(hostName);
+        SftpSession session = new SftpSession(this, hostName, outer, uniqueHost ? null : HostsManage.current(),
+                outer == null ? sftpPool.getSessionLeakTimeout() : 0);
+        // Only once the connection is borrowed, a failed borrow leaves nothing bound to the thread.
+        Deque<SftpSession> open = sessions.get();
+        if (open == null) {
+            open = new ArrayDeque<>();
+            sessions.set(open);
+        }
+        open.push(session);
+        if (!uniqueHost) {
+            HostsManage.changeHost(hostName, false);
+        }
+        return session;
+    }
+
+    /**
+     * Run the operations on one connection of the host, returned to the pool when they are done.
+     * <pre>
+     * sftpTemplate.withSession("remote-1", template -> {
+     *     template.upload("D:\\a.docx", "/home/easysftp/a.docx");
+     *     return template.exists("/home/easysftp/a.docx");
+     * });
+     * </pre>
+     * @param hostName host key of multiple hosts, ignored for a single host.
+     * @see #openSession(String)
+     */
+    public <T> T withSession(String hostName, SftpSessionCallback<T> action) throws SftpException {
         Assert.notNull(action, "Callback object must not be null");
-        String hostName = sftpPool.isUniqueHost() ? null : HostsManage.getHostName();
+        SftpSession session = openSession(hostName);
+        try {
+            return action.doInSession(this);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Innermost open session of the current thread on the host, null if none.
+     */
+    private SftpSession pinnedSession(String hostName) {
+        Deque<SftpSession> open = sessions.get();
+        if (open == null) {
+            return null;
+        }
+        for (SftpSession session : open) {
+            if (session.isOpen() && Objects.equals(session.getHostName(), hostName)) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    void sessionClosed(SftpSession session, HostsManage.Hosts previousHost) {
+        Deque<SftpSession> open = sessions.get();
+        if (open != null) {
+            open.remove(session);
+            if (open.isEmpty()) {
+                sessions.remove();
+            }
+        }
+        if (!sftpPool.isUniqueHost()) {
+            HostsManage.restore(previousHost);
+        }
+    }
+
+    /**
+     * Run many operations on one borrowed connection, it is validated once instead of once per
+     * operation. The operations run in the calling thread when they are invoked on the batch.
+     * <pre>
+     * BatchResult result = sftpTemplate.batch(batch -> {
+     *     batch.upload("D:\\a.docx", "/home/easysftp/a.docx");
+     *     batch.upload("D:\\b.docx", "/home/easysftp/b.docx");
+     * });
+     * </pre>
+     * @param operations invokes the operations on the batch.
+     * @return outcome of every operation, a failed operation does not stop the others.
+     */
+    public BatchResult batch(Consumer<SftpBatch> operations) {
+        Assert.notNull(operations, "operations must not be null");
+        String hostName = null;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            hostName = currentHostName();
+            SftpBatch batch = new SftpBatch(this, hostName);
+            try {
+                operations.accept(batch);
+            } finally {
+                batch.close();
+            }
+            success = batch.getResult().isSuccess();
+            return batch.getResult();
+        } finally {
+            HostsManage.clear();
+            metrics.recordOperation(hostName, "batch", System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Upload many files on one borrowed connection.
+     * @param files local source path to remote path, in the order of the map.
+     * @return outcome of every upload.
+     */
+    public BatchResult uploadAll(Map<String, String> files) {
+        Assert.notNull(files, "files must not be null");
+        return batch(batch -> files.forEach(batch::upload));
+    }
+
+    /**
+     * Download many files on one borrowed connection.
+     * @param files remote path to local destination path, in the order of the map.
+     * @return outcome of every download.
+     */
+    public BatchResult downloadAll(Map<String, String> files) {
+        Assert.notNull(files, "files must not be null");
+        return batch(batch -> files.forEach(batch::download));
+    }
+
+    /**
+     * Upload many small files over bulkUploadLanes pooled connections at once, spread like the files of
+     * {@link #uploadDirectory(String, String)}. Every distinct remote directory is created once before
+     * its files, which are then written without any directory round trip.
+     * <pre>
+     * BatchResult result = sftpTemplate.uploadSmallFiles(files);
+     * result.getFailures().forEach((path, e) -> log.warn("{} failed", path, e));
+     * </pre>
+     * @param files local source path to remote path.
+     * @return outcome of every upload, in the order of the map.
+     */
+    public BatchResult uploadSmallFiles(Map<String, String> files) {
+        Assert.notNull(files, "files must not be null");
+        String hostName = null;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            hostName = currentHostName();
+            BatchResult result = new DirectoryTransfer(this, hostName, transferProperties.getBulkUploadLanes(), TransferListener.NONE)
+                    .uploadFiles(files);
+            success = result.isSuccess();
+            return result;
+        } finally {
+            HostsManage.clear();
+            metrics.recordOperation(hostName, "uploadSmallFiles", System.nanoTime() - start, success);
+        }
+    }
+
+    private <T> T execute(String operation, SftpCallback<T> action) throws SftpException {
+        Assert.notNull(action, "Callback object must not be null");
+        String hostName = null;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            hostName = currentHostName();
+            T result = doExecute(hostName, action);
+            success = true;
+            return result;
+        } finally {
+            HostsManage.clear();
+            metrics.recordOperation(hostName, operation, System.nanoTime() - start, success);
+        }
+    }
+
+    private void executeWithoutResult(String operation, SftpCallbackWithoutResult action) throws SftpException {
+        Assert.notNull(action, "Callback object must not be null");
+        this.execute(operation, channelSftp -> {
+            action.doInSftp(channelSftp);
+            return null;
+        });
+    }
+
+    private <R extends TransferResult> R transferDirectory(String operation, String direction,
+                                                           Function<String, R> transfer) {
+        String hostName = null;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            hostName = currentHostName();
+            R result = transfer.apply(hostName);
+            transferred(hostName, direction, result.getTransferredBytes(), start);
+            success = result.isSuccess();
+            return result;
+        } finally {
+            HostsManage.clear();
+            metrics.recordOperation(hostName, operation, System.nanoTime() - start, success);
+        }
+    }
+
+    void transferred(String hostName, String direction, long bytes, long start) {
+        metrics.recordTransfer(hostName, direction, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Record the bytes the monitor saw, JSch returns normally when the monitor stopped the transfer,
+     * so a stopped transfer is turned into a failure here.
+     */
+    private void transferred(String hostName, String direction, CountingMonitor counted, String path, long start) throws SftpException {
+        transferred(hostName, direction, counted.bytes, start);
+        if (counted.stopped) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, direction + " of '" + path + "' was stopped by the monitor after " + counted.bytes + " bytes.");
+        }
+    }
+
+    private ChannelSftpWrapper wrapper(ChannelSftp channelSftp) {
+        return wrapper(currentHostName(), channelSftp);
+    }
+
+    ChannelSftpWrapper wrapper(String hostName, ChannelSftp channelSftp) {
+        return new ChannelSftpWrapper(channelSftp, transferProperties.getBufferSize(), directoryCache(hostName),
+                sftpPool.getTuning(hostName), localIo);
+    }
+
+    /**
+     * Remote directories known to exist on the host, shared by all its connections.
+     */
+    private RemoteDirectoryCache directoryCache(String hostName) {
+        // The members of a group have their own directories, a call for the group may land on any of them.
+        if (transferProperties.getDirectoryCacheSize() <= 0 || sftpPool.getGroupNames().contains(hostName)) {
+            return null;
+        }
+        return directoryCaches.computeIfAbsent(hostName == null ? "" : hostName, key ->
+                new RemoteDirectoryCache(transferProperties.getDirectoryCacheSize(), transferProperties.getDirectoryCacheTtl()));
+    }
+
+    /**
+     * Host key of the current call, null for a single host.
+     */
+    private String currentHostName() {
+        if (sftpPool.isUniqueHost()) {
+            return null;
+        }
+        // A host changed for one call inside a session is used up by it, the session host applies again.
+        Deque<SftpSession> open = sessions.get();
+        if (HostsManage.current() == null && open != null) {
+            for (SftpSession session : open) {
+                if (session.isOpen()) {
+                    return session.getHostName();
+                }
+            }
+        }
+        return HostsManage.getHostName();
+    }
+
+    private TransferJournal journal(String direction, String localPath, String remotePath) {
+        return TransferJournal.of(transferProperties.getJournalDir(), direction, currentHostName(),
+                localPath, remotePath, transferProperties.getJournalInterval());
+    }
+
+    /**
+     * Run the action on a connection of the given host, borrowed from and returned to the pool,
+     * or on the pinned connection of an open session of the host.
+     */
+    protected <T> T doExecute(String hostName, SftpCallback<T> action) throws SftpException {
+        SftpSession session = pinnedSession(hostName);
+        if (session != null) {
+            return session.execute(action);
+        }
         SftpClient sftpClient = null;
         try {
             sftpClient = sftpPool.borrowObject(hostName);
             return action.doInSftp(sftpClient.getChannelSftp());
         } finally {
-            HostsManage.clear();
             if (sftpClient != null) {
-                if (sftpClient.reset()) {
-                    sftpPool.returnObject(hostName, sftpClient);
-                } else {
-                    sftpPool.invalidateObject(hostName, sftpClient);
-                }
+                release(hostName, sftpClient, false);
             }
         }
     }
 
+    SftpClient borrow(String hostName) {
+        return sftpPool.borrowObject(hostName);
+    }
+
     /**
-     * The sftp template method with no return value includes basic SFTP operations,
-     * such as obtaining and returning connections.
+     * Return the connection to the pool, or destroy it if it is broken or can not be reset.
      */
-    public void executeWithoutResult(SftpCallbackWithoutResult action) throws SftpException {
-        Assert.notNull(action, "Callback object must not be null");
-        this.execute(ChannelSftp -> {
-            action.doInSftp(ChannelSftp);
-            return null;
-        });
+    void release(String hostName, SftpClient sftpClient, boolean broken) {
+        if (!broken && sftpClient.reset()) {
+            sftpPool.returnObject(hostName, sftpClient);
+        } else {
+            sftpPool.invalidateObject(hostName, sftpClient);
+        }
     }
 
-    public void download(String from, String to) throws SftpException {
-        this.executeWithoutResult(channelSftp -> new ChannelSftpWrapper(channelSftp).download(from, to));
+    /**
+     * Borrow a connection that is handed back by the returned stream when it is closed.
+     * The operation is timed from the open to the close of the stream, its bytes are a transfer of the direction.
+     */
+    private <S extends Closeable> S openStream(String operation, String direction, SftpCallback<S> open,
+                                               BiFunction<S, PooledStreams.Release, S> pooled) throws SftpException {
+        String hostName = null;
+        long start = System.nanoTime();
+        boolean opened = false;
+        try {
+            hostName = currentHostName();
+            String host = hostName;
+            SftpClient sftpClient = sftpPool.borrowObject(host);
+            S stream;
+            try {
+                stream = open.doInSftp(sftpClient.getChannelSftp());
+            } catch (SftpException | RuntimeException e) {
+                release(host, sftpClient, false);
+                throw e;
+            }
+            opened = true;
+            return pooled.apply(stream, (broken, bytes) -> {
+                release(host, sftpClient, broken);
+                transferred(host, direction, bytes, start);
+                metrics.recordOperation(host, operation, System.nanoTime() - start, !broken);
+            });
+        } finally {
+            HostsManage.clear();
+            if (!opened) {
+                metrics.recordOperation(hostName, operation, System.nanoTime() - start, false);
+            }
+        }
     }
 
-    public void upload(String from, String to) throws SftpException {
-        this.executeWithoutResult(channelSftp -> new ChannelSftpWrapper(channelSftp).upload(from, to));
+    private void downloadSegments(String hostName, String from, Path to, long size, long segmentSize) throws SftpException {
+        long segments = (size + segmentSize - 1) / segmentSize;
+        int parallelism = (int) Math.min(Math.max(1, transferProperties.getSegmentParallelism()), segments);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(to, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += segmentSize) {
+                long start = offset;
+                long length = Math.min(segmentSize, size - offset);
+                futures.add(executor.submit(() -> {
+                    downloadSegment(hostName, from, channel, start, length);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                awaitSegment(future, from);
+            }
+            completed = true;
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to write local file '" + to + "'.", e);
+        } finally {
+            executor.shutdownNow();
+            if (!completed) {
+                try {
+                    Files.deleteIfExists(to);
+                } catch (IOException ignored) {
+                }
+            }
+        }
     }
 
-    public boolean exists(String path) throws SftpException {
-        return this.execute(channelSftp -> new ChannelSftpWrapper(channelSftp).exists(path));
+    private void downloadSegment(String hostName, String from, FileChannel to, long offset, long length) throws SftpException {
+        int attempts = Math.max(0, transferProperties.getSegmentRetries()) + 1;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                doExecute(hostName, channelSftp -> {
+                    wrapper(hostName, channelSftp).downloadRange(from, to, offset, length);
+                    return null;
+                });
+                return;
+            } catch (SftpException | PoolException e) {
+                if (attempt >= attempts || Thread.currentThread().isInterrupted()
+                        || (e instanceof SftpException && ((SftpException) e).id == ChannelSftp.SSH_FX_NO_SUCH_FILE)) {
+                    throw e;
+                }
+            }
+        }
     }
 
-    public ChannelSftp.LsEntry[] list(String path) throws SftpException {
-        return this.execute(channelSftp -> new ChannelSftpWrapper(channelSftp).list(path));
+    private void awaitSegment(Future<Void> future, String from) throws SftpException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "interrupted while downloading '" + from + "'.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SftpException) {
+                throw (SftpException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "failed to download '" + from + "'.", cause);
+        }
+    }
+
+    /**
+     * Counts the bytes JSch reports to the monitor of the caller and whether it stopped the transfer.
+     */
+    private static class CountingMonitor implements SftpProgressMonitor {
+        private final SftpProgressMonitor delegate;
+        private long bytes;
+        private boolean stopped;
+
+        CountingMonitor(SftpProgressMonitor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void init(int op, String src, String dest, long max) {
+            if (delegate != null) {
+                delegate.init(op, src, dest, max);
+            }
+        }
+
+        @Override
+        public boolean count(long count) {
+            bytes += count;
+            if (delegate != null && !delegate.count(count)) {
+                stopped = true;
+            }
+            return !stopped;
+        }
+
+        @Override
+        public void end() {
+            if (delegate != null) {
+                delegate.end();
+            }
+        }
     }
 }
@@ -0,0 +1,52 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @explain: Outcome of a directory sync, the transferred files plus the files skipped
+ * because they were unchanged and the remote orphans deleted.
+ * @author: lihewei
+ */
+public class SyncResult extends TransferResult {
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong skippedBytes = new AtomicLong();
+    private final AtomicLong deletedFiles = new AtomicLong();
+
+    void skipped(long bytes) {
+        skippedFiles.incrementAndGet();
+        skippedBytes.addAndGet(bytes);
+    }
+
+    void deleted() {
+        deletedFiles.incrementAndGet();
+    }
+
+    /**
+     * Number of files left alone because the remote copy has the same size and mtime.
+     */
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * Number of bytes of the skipped files.
+     */
+    public long getSkippedBytes() {
+        return skippedBytes.get();
+    }
+
+    /**
+     * Number of remote files and directories deleted because they no longer exist locally.
+     */
+    public long getDeletedFiles() {
+        return deletedFiles.get();
+    }
+
+    @Override
+    public String toString() {
+        return SyncResult.class.getSimpleName() + "[transferredFiles=" + getTransferredFiles()
+                + ", transferredBytes=" + getTransferredBytes() + ", skippedFiles=" + skippedFiles
+                + ", skippedBytes=" + skippedBytes + ", deletedFiles=" + deletedFiles
+                + ", failures=" + getFailures().size() + "]";
+    }
+}
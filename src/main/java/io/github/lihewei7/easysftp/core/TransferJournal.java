@@ -0,0 +1,144 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.SftpProgressMonitor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * @explain: Checkpoint of a resumable transfer, kept in a small local file so that a transfer
+ * interrupted by a broken connection or a restart of the process continues where it stopped.
+ * It records the remote path, the size and mtime of the source file and the bytes confirmed.
+ * @author: lihewei
+ */
+public class TransferJournal implements SftpProgressMonitor {
+    private static final Log _logger = LogFactory.getLog(TransferJournal.class);
+
+    private final Path file;
+    private final long interval;
+    private String remotePath;
+    private long size = -1;
+    private long mtime = -1;
+    private long confirmed;
+    private long stored;
+
+    TransferJournal(Path file, long interval) {
+        this.file = file;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Journal of one transfer, identified by its direction, host and both paths.
+     * @param journalDir local directory of the journals.
+     * @param interval   number of bytes between two checkpoints.
+     */
+    public static TransferJournal of(String journalDir, String direction, String hostName,
+                                     String localPath, String remotePath, long interval) {
+        String key = direction + '\n' + hostName + '\n' + localPath + '\n' + remotePath;
+        String name = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".journal";
+        return new TransferJournal(Paths.get(journalDir, name), interval);
+    }
+
+    /**
+     * Read the checkpoint left by a previous attempt.
+     * @return false if there is no usable checkpoint.
+     */
+    boolean load() {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            remotePath = properties.getProperty("remotePath");
+            size = Long.parseLong(properties.getProperty("size"));
+            mtime = Long.parseLong(properties.getProperty("mtime"));
+            confirmed = stored = Long.parseLong(properties.getProperty("confirmed"));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            _logger.warn("Easysftp: ignore unreadable transfer journal " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Whether the checkpoint was taken for the same source file.
+     */
+    boolean matches(String remotePath, long size, long mtime) {
+        return remotePath.equals(this.remotePath) && this.size == size && this.mtime == mtime;
+    }
+
+    /**
+     * Start a transfer from the given offset and store the checkpoint.
+     */
+    void begin(String remotePath, long size, long mtime, long offset) {
+        this.remotePath = remotePath;
+        this.size = size;
+        this.mtime = mtime;
+        this.confirmed = offset;
+        store();
+    }
+
+    long getConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * The transfer completed, the journal is no longer needed.
+     */
+    void complete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            _logger.warn("Easysftp: failed to delete transfer journal " + file, e);
+        }
+    }
+
+    @Override
+    public void init(int op, String src, String dest, long max) {
+    }
+
+    @Override
+    public boolean count(long count) {
+        confirmed += count;
+        if (confirmed - stored >= interval) {
+            store();
+        }
+        return true;
+    }
+
+    @Override
+    public void end() {
+        store();
+    }
+
+    private void store() {
+        Properties properties = new Properties();
+        properties.setProperty("remotePath", remotePath);
+        properties.setProperty("size", String.valueOf(size));
+        properties.setProperty("mtime", String.valueOf(mtime));
+        properties.setProperty("confirmed", String.valueOf(confirmed));
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stored = confirmed;
+        } catch (IOException e) {
+            // The transfer goes on, it just can not be resumed from this checkpoint.
+            _logger.warn("Easysftp: failed to write transfer journal " + file, e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.lihewei7.easysftp.core;
+
+/**
+ * Progress of a transfer of many files, called from the transfer threads.
+ *
+ * @author: lihewei
+ */
+public interface TransferListener {
+
+    TransferListener NONE = new TransferListener() {
+    };
+
+    /**
+     * A file was transferred.
+     * @param path     remote path of the file.
+     * @param bytes    size of the file.
+     * @param progress aggregate result so far.
+     */
+    default void onTransferred(String path, long bytes, TransferResult progress) {
+    }
+
+    /**
+     * A file was not transferred by a sync because it is unchanged.
+     * @param path     remote path of the file.
+     * @param bytes    size of the file.
+     * @param progress aggregate result so far.
+     */
+    default void onSkipped(String path, long bytes, TransferResult progress) {
+    }
+
+    /**
+     * A file or directory failed, the transfer goes on with the others.
+     * @param path     remote path of the file or directory.
+     * @param e        the cause.
+     * @param progress aggregate result so far.
+     */
+    default void onFailed(String path, Exception e, TransferResult progress) {
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.lihewei7.easysftp.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @explain: Aggregate outcome of a transfer of many files. A failed file is recorded
+ * with its exception and does not stop the others.
+ * @author: lihewei
+ */
+public class TransferResult {
+    private final AtomicLong transferredFiles = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final Map<String, Exception> failures = new ConcurrentHashMap<>();
+
+    void transferred(long bytes) {
+        transferredFiles.incrementAndGet();
+        transferredBytes.addAndGet(bytes);
+    }
+
+    void failed(String path, Exception e) {
+        failures.put(path, e);
+    }
+
+    /**
+     * Number of files transferred successfully so far.
+     */
+    public long getTransferredFiles() {
+        return transferredFiles.get();
+    }
+
+    /**
+     * Number of bytes of the files transferred successfully so far.
+     */
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    /**
+     * Failed paths and their cause.
+     */
+    public Map<String, Exception> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return TransferResult.class.getSimpleName() + "[transferredFiles=" + transferredFiles
+                + ", transferredBytes=" + transferredBytes + ", failures=" + failures.size() + "]";
+    }
+}
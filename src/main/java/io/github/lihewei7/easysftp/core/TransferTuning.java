@@ -0,0 +1,195 @@
+package io.github.lihewei7.easysftp.core;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import io.github.lihewei7.easysftp.config.SftpProperties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+
+/**
+ * Transfer settings of one host shared by all its channels: outstanding read requests,
+ * copy buffer size and channel window. With autoTune the RTT is sampled when a channel is opened
+ * and the throughput of every large download is compared with the limit of the request pipeline,
+ * bulkRequests * request size / RTT. Close to that limit the pipeline is the bottleneck and the
+ * number of requests is doubled, far below it the link is and the number is halved again.
+ * JSch only pipelines reads this way, uploads are bounded by the window of the server.
+ *
+ * @author: lihewei
+ */
+class TransferTuning {
+    private static final Log _logger = LogFactory.getLog(TransferTuning.class);
+    private static final int DEFAULT_BULK_REQUESTS = 16;
+    private static final int DEFAULT_WINDOW_SIZE = 2 * 1024 * 1024;
+    /**
+     * Approximate payload of one read request, JSch reads at most the remote packet size.
+     */
+    private static final int REQUEST_SIZE = 32 * 1024;
+    /**
+     * Downloads smaller than this are dominated by open and close and say nothing about the pipeline.
+     */
+    private static final long MIN_SAMPLE_BYTES = 1024L * 1024L;
+    private static final double PIPELINE_BOUND = 0.7;
+    private static final double LINK_BOUND = 0.3;
+    private static volatile Method[] windowSetters;
+
+    private final String hostName;
+    private final int minBulkRequests;
+    private final int maxBulkRequests;
+    private final int bufferSize;
+    private final int windowSize;
+    private final boolean autoTune;
+    private volatile int bulkRequests;
+    private volatile long rttNanos;
+
+    TransferTuning(SftpProperties sftpProperties) {
+        this.hostName = sftpProperties.getHost();
+        this.minBulkRequests = sftpProperties.getBulkRequests() > 0 ? sftpProperties.getBulkRequests() : DEFAULT_BULK_REQUESTS;
+        this.maxBulkRequests = Math.max(minBulkRequests, sftpProperties.getMaxBulkRequests());
+        this.bufferSize = sftpProperties.getBufferSize();
+        this.autoTune = sftpProperties.isAutoTune();
+        // The window is fixed when the channel opens, with autoTune it must already fit the largest pipeline.
+        int window = sftpProperties.getWindowSize();
+        if (window <= 0 && autoTune) {
+            window = Math.max(DEFAULT_WINDOW_SIZE, maxBulkRequests * REQUEST_SIZE * 2);
+        }
+        this.windowSize = window;
+        this.bulkRequests = minBulkRequests;
+    }
+
+    boolean isAutoTune() {
+        return autoTune;
+    }
+
+    /**
+     * Copy buffer size of the host, 0 if not set for the host.
+     */
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getBulkRequests() {
+        return bulkRequests;
+    }
+
+    /**
+     * Set the receive window of a channel that is not connected yet. JSch has no public setter,
+     * if the package-private one can not be reached the JSch default is kept.
+     */
+    void openWindow(Channel channel) {
+        if (windowSize <= 0 || windowSize == DEFAULT_WINDOW_SIZE) {
+            return;
+        }
+        Method[] setters = windowSetters();
+        if (setters == null) {
+            return;
+        }
+        try {
+            setters[0].invoke(channel, windowSize);
+            setters[1].invoke(channel, windowSize);
+        } catch (ReflectiveOperationException e) {
+            _logger.debug("Easysftp: could not set the channel window size", e);
+        }
+    }
+
+    /**
+     * Give the channel the current number of outstanding requests before a download.
+     */
+    void apply(ChannelSftp channelSftp) throws JSchException {
+        int bulk = bulkRequests;
+        if (channelSftp.getBulkRequests() != bulk) {
+            channelSftp.setBulkRequests(bulk);
+        }
+    }
+
+    void recordRtt(long nanos) {
+        long rtt = rttNanos;
+        rttNanos = rtt == 0 ? nanos : (rtt * 7 + nanos) / 8;
+    }
+
+    /**
+     * Monitor that measures the download for the tuner and passes everything on to the given one.
+     * @param monitor may be null
+     */
+    SftpProgressMonitor measure(SftpProgressMonitor monitor) {
+        return autoTune ? new Measure(monitor, bulkRequests) : monitor;
+    }
+
+    synchronized void record(long bytes, long nanos, int bulk) {
+        long rtt = rttNanos;
+        // Only samples taken with the current setting are compared with its pipeline limit.
+        if (bytes < MIN_SAMPLE_BYTES || nanos <= 0 || rtt <= 0 || bulk != bulkRequests) {
+            return;
+        }
+        double throughput = bytes * 1e9 / nanos;
+        double pipelineLimit = (double) bulk * REQUEST_SIZE * 1e9 / rtt;
+        double ratio = throughput / pipelineLimit;
+        int tuned = bulk;
+        if (ratio > PIPELINE_BOUND && bulk < maxBulkRequests) {
+            tuned = Math.min(bulk * 2, maxBulkRequests);
+        } else if (ratio < LINK_BOUND && bulk > minBulkRequests) {
+            tuned = Math.max(bulk / 2, minBulkRequests);
+        }
+        if (tuned != bulk) {
+            bulkRequests = tuned;
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Easysftp: host '" + hostName + "' bulk requests " + bulk + " -> " + tuned
+                        + ", rtt " + rtt / 1000 + " us, " + (long) (throughput / 1024) + " KB/s of " + (long) (pipelineLimit / 1024) + " KB/s");
+            }
+        }
+    }
+
+    private static Method[] windowSetters() {
+        Method[] setters = windowSetters;
+        if (setters == null) {
+            try {
+                Method max = Channel.class.getDeclaredMethod("setLocalWindowSizeMax", int.class);
+                Method size = Channel.class.getDeclaredMethod("setLocalWindowSize", int.class);
+                max.setAccessible(true);
+                size.setAccessible(true);
+                setters = windowSetters = new Method[]{max, size};
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                _logger.warn("Easysftp: this JSch version does not allow setting the window size, window-size is ignored");
+                setters = windowSetters = new Method[0];
+            }
+        }
+        return setters.length == 0 ? null : setters;
+    }
+
+    private class Measure implements SftpProgressMonitor {
+        private final SftpProgressMonitor delegate;
+        private final int bulk;
+        private long start;
+        private long bytes;
+
+        Measure(SftpProgressMonitor delegate, int bulk) {
+            this.delegate = delegate;
+            this.bulk = bulk;
+        }
+
+        @Override
+        public void init(int op, String src, String dest, long max) {
+            start = System.nanoTime();
+            if (delegate != null) {
+                delegate.init(op, src, dest, max);
+            }
+        }
+
+        @Override
+        public boolean count(long count) {
+            bytes += count;
+            return delegate == null || delegate.count(count);
+        }
+
+        @Override
+        public void end() {
+            record(bytes, System.nanoTime() - start, bulk);
+            if (delegate != null) {
+                delegate.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.lihewei7.easysftp.metrics;
+
+import io.github.lihewei7.easysftp.core.SftpMetrics;
+import io.github.lihewei7.easysftp.core.SftpPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @explain: Micrometer instrumentation of the sftp pool and template.
+ * Pool state is read by gauges when the registry is scraped, the hot path only
+ * records into meters that are looked up once per tag combination.
+ * @author: lihewei
+ */
+public class MicrometerSftpMetrics implements SftpMetrics, MeterBinder {
+    /**
+     * Host tag value used for a single host.
+     */
+    public static final String DEFAULT_HOST = "default";
+
+    private final MeterRegistry registry;
+    private final SftpPool sftpPool;
+    private final Map<String, Timer> operationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> byteCounters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> throughputs = new ConcurrentHashMap<>();
+    private final Map<String, Timer> connectTimers = new ConcurrentHashMap<>();
+
+    public MicrometerSftpMetrics(MeterRegistry registry, SftpPool sftpPool) {
+        this.registry = registry;
+        this.sftpPool = sftpPool;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Set<String> hostNames = sftpPool.isUniqueHost() ? Collections.singleton(null) : sftpPool.getHostNames();
+        for (String hostName : hostNames) {
+            Tags tags = Tags.of("host", host(hostName));
+            Gauge.builder("sftp.pool.active", sftpPool, pool -> pool.getNumActive(hostName))
+                    .description("Connections borrowed from the pool").tags(tags).register(registry);
+            Gauge.builder("sftp.pool.idle", sftpPool, pool -> pool.getNumIdle(hostName))
+                    .description("Idle connections in the pool").tags(tags).register(registry);
+            Gauge.builder("sftp.pool.waiting", sftpPool, pool -> pool.getNumWaiters(hostName))
+                    .description("Callers blocked waiting for a connection").tags(tags).register(registry);
+            Gauge.builder("sftp.pool.circuit.state", sftpPool, pool -> pool.getCircuitState(hostName).ordinal())
+                    .description("Circuit breaker of the host, 0 closed, 1 open, 2 half open").tags(tags).register(registry);
+        }
+        Gauge.builder("sftp.pool.borrow.wait.mean", sftpPool, SftpPool::getMeanBorrowWaitTimeMillis)
+                .description("Mean time callers waited to borrow a connection").baseUnit("milliseconds").register(registry);
+        FunctionCounter.builder("sftp.pool.created", sftpPool, SftpPool::getCreatedCount)
+                .description("Connections created by the pool").register(registry);
+        FunctionCounter.builder("sftp.pool.validation.failures", sftpPool, SftpPool::getDestroyedByBorrowValidationCount)
+                .description("Connections destroyed because they failed validation on borrow").register(registry);
+    }
+
+    @Override
+    public void recordOperation(String hostName, String operation, long nanos, boolean success) {
+        String key = host(hostName) + '/' + operation + '/' + outcome(success);
+        operationTimers.computeIfAbsent(key, k -> Timer.builder("sftp.operation")
+                .description("SftpTemplate operations, including the time spent borrowing a connection")
+                .tags("host", host(hostName), "operation", operation, "outcome", outcome(success))
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordTransfer(String hostName, String direction, long bytes, long nanos) {
+        String key = host(hostName) + '/' + direction;
+        byteCounters.computeIfAbsent(key, k -> Counter.builder("sftp.transfer.bytes")
+                .description("File content transferred").baseUnit("bytes")
+                .tags("host", host(hostName), "direction", direction)
+                .register(registry))
+                .increment(bytes);
+        if (nanos > 0) {
+            throughputs.computeIfAbsent(key, k -> DistributionSummary.builder("sftp.transfer.throughput")
+                    .description("Throughput of single transfers").baseUnit("bytes/second")
+                    .tags("host", host(hostName), "direction", direction)
+                    .register(registry))
+                    .record(bytes * 1e9 / nanos);
+        }
+    }
+
+    @Override
+    public void recordConnect(String hostName, long nanos, boolean success) {
+        connectTimers.computeIfAbsent(host(hostName) + '/' + outcome(success), k -> Timer.builder("sftp.connection.create")
+                .description("Opening a new pooled connection")
+                .tags("host", host(hostName), "outcome", outcome(success))
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String host(String hostName) {
+        return hostName == null ? DEFAULT_HOST : hostName;
+    }
+
+    private static String outcome(boolean success) {
+        return success ? "success" : "failure";
+    }
+}
@@ -0,0 +1,245 @@
+package io.github.lihewei7.easysftp.reactive;
+
+import io.github.lihewei7.easysftp.core.CapturedHost;
+import io.github.lihewei7.easysftp.core.ChannelSftpWrapper;
+import io.github.lihewei7.easysftp.core.HostsManage;
+import io.github.lihewei7.easysftp.core.SftpPool;
+import io.github.lihewei7.easysftp.core.SftpTemplate;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @explain: Reactive file transfers on top of {@link SftpTemplate}.
+ * A download reads one chunk per downstream request, an upload requests at most prefetch chunks
+ * ahead of what was written, so memory stays bounded on both sides. A download holds its pooled
+ * connection only while the subscriber has demand, an upload holds it until the transfer
+ * completes, fails or is cancelled.
+ * Blocking sftp calls run on the given scheduler, bounded elastic by default.
+ * The host selected with {@link HostsManage#changeHost(String)} is taken when the method is called.
+ * @author: lihewei
+ */
+public class ReactiveSftpTemplate {
+    /**
+     * Number of chunks an upload buffers ahead of the sftp writes.
+     */
+    public static final int DEFAULT_PREFETCH = 8;
+    /**
+     * How long a download keeps its connection while the subscriber requests nothing.
+     */
+    private static final long RELEASE_DELAY_MILLIS = 100;
+
+    private final SftpTemplate sftpTemplate;
+    private final SftpPool sftpPool;
+    private final int chunkSize;
+    private final int prefetch;
+    private final Scheduler scheduler;
+
+    public ReactiveSftpTemplate(SftpTemplate sftpTemplate, SftpPool sftpPool) {
+        this(sftpTemplate, sftpPool, ChannelSftpWrapper.DEFAULT_BUFFER_SIZE, DEFAULT_PREFETCH, Schedulers.boundedElastic());
+    }
+
+    /**
+     * @param chunkSize maximum size of the buffers emitted by downloads.
+     * @param prefetch  number of chunks an upload buffers ahead of the sftp writes.
+     * @param scheduler runs the blocking sftp calls.
+     */
+    public ReactiveSftpTemplate(SftpTemplate sftpTemplate, SftpPool sftpPool, int chunkSize, int prefetch, Scheduler scheduler) {
+        this.sftpTemplate = sftpTemplate;
+        this.sftpPool = sftpPool;
+        this.chunkSize = chunkSize > 0 ? chunkSize : ChannelSftpWrapper.DEFAULT_BUFFER_SIZE;
+        this.prefetch = Math.max(1, prefetch);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Content of a remote file. Every emitted buffer is a new one that the subscriber may keep.
+     * Reads only run while the subscriber has demand. The connection is returned to the pool once
+     * the demand has been idle for a short while and the file is opened again at the same offset
+     * when more is requested.
+     * @param from Path of the remote file
+     */
+    public Flux<ByteBuffer> download(String from) {
+        CapturedHost host;
+        try {
+            host = CapturedHost.capture(sftpPool);
+        } catch (RuntimeException e) {
+            return Flux.error(e);
+        }
+        return Flux.create(sink -> new DemandRead(host, from, sink).start());
+    }
+
+    /**
+     * Write the published buffers to a remote file, its parent directories are created if missing.
+     * If the publisher fails the partial file is left in place. Unlike a download, the connection
+     * stays borrowed from subscription until the upload ends, also while the publisher emits
+     * nothing, because the remote file is open for writing the whole time.
+     * @param from Content of the file
+     * @param to   Remote path after the file is uploaded
+     * @return completes once the remote file is closed.
+     */
+    public Mono<Void> upload(Publisher<ByteBuffer> from, String to) {
+        CapturedHost host;
+        try {
+            host = CapturedHost.capture(sftpPool);
+        } catch (RuntimeException e) {
+            return Mono.error(e);
+        }
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> host.call(() -> sftpTemplate.openOutputStream(to))).subscribeOn(scheduler),
+                out -> Flux.from(from)
+                        .publishOn(scheduler, prefetch)
+                        .doOnNext(buffer -> write(out, buffer))
+                        .then(),
+                out -> Mono.fromCallable(() -> {
+                    out.close();
+                    return out;
+                }).subscribeOn(scheduler).then(),
+                (out, e) -> Mono.fromRunnable(() -> closeQuietly(out)).subscribeOn(scheduler),
+                out -> Mono.fromRunnable(() -> closeQuietly(out)).subscribeOn(scheduler));
+    }
+
+    private static void write(OutputStream out, ByteBuffer buffer) {
+        try {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.duplicate().get(bytes);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Reads of one download. Signals only schedule a drain, drains never overlap, so the stream
+     * and the offset are only used by one thread at a time.
+     */
+    private final class DemandRead implements Runnable {
+        private final CapturedHost host;
+        private final String from;
+        private final FluxSink<ByteBuffer> sink;
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean releaseScheduled;
+        private InputStream in;
+        private long offset;
+        private long lastRead;
+        private boolean done;
+
+        DemandRead(CapturedHost host, String from, FluxSink<ByteBuffer> sink) {
+            this.host = host;
+            this.from = from;
+            this.sink = sink;
+        }
+
+        void start() {
+            sink.onRequest(n -> schedule());
+            sink.onDispose(this::schedule);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    scheduler.schedule(this);
+                } catch (RejectedExecutionException e) {
+                    wip.set(0);
+                    sink.error(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            try {
+                while (!sink.isCancelled() && sink.requestedFromDownstream() > 0) {
+                    if (in == null) {
+                        in = host.call(() -> sftpTemplate.openInputStream(from, offset));
+                    }
+                    byte[] chunk = new byte[chunkSize];
+                    int read = in.read(chunk);
+                    lastRead = System.nanoTime();
+                    if (read < 0) {
+                        // Hand the connection back before the subscriber sees the completion.
+                        done = true;
+                        release();
+                        sink.complete();
+                        return;
+                    }
+                    offset += read;
+                    sink.next(ByteBuffer.wrap(chunk, 0, read));
+                }
+                if (sink.isCancelled()) {
+                    done = true;
+                    release();
+                } else if (in != null) {
+                    releaseWhenIdle();
+                }
+            } catch (Exception e) {
+                done = true;
+                release();
+                sink.error(e);
+            }
+        }
+
+        /**
+         * Release the connection if there was no demand for the release delay, check again later if not.
+         */
+        private void releaseWhenIdle() {
+            long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRead);
+            if (idle >= RELEASE_DELAY_MILLIS) {
+                release();
+            } else if (!releaseScheduled) {
+                releaseScheduled = true;
+                try {
+                    scheduler.schedule(() -> {
+                        releaseScheduled = false;
+                        schedule();
+                    }, RELEASE_DELAY_MILLIS - idle, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // The scheduler can not delay tasks, do not keep the connection at all.
+                    releaseScheduled = false;
+                    release();
+                }
+            }
+        }
+
+        private void release() {
+            if (in != null) {
+                closeQuietly(in);
+                in = null;
+            }
+        }
+    }
+}